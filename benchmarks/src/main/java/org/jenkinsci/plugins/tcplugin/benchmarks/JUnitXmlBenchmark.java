@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of in-memory test results to JUnit XML, no file access.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JUnitXmlBenchmark {
+
+	@Param({"10", "100"})
+	public int suites;
+
+	@Param({"10", "100"})
+	public int testsPerSuite;
+
+	@Param({"0.1"})
+	public double failureRatio;
+
+	private List<TestSuiteResult> results;
+
+	@Setup(Level.Trial)
+	public void createResults() {
+		Random random = new Random(42);
+		results = new ArrayList<TestSuiteResult>();
+		for (int i = 0; i < suites; i++) {
+			TestSuiteResult suite = new TestSuiteResult("Suite" + i);
+			for (int j = 0; j < testsPerSuite; j++) {
+				String classname = "Suite" + i + ".Group" + (j % 10);
+				long time = random.nextInt(60000);
+				if (random.nextDouble() < failureRatio) {
+					suite.addTestResult(new TestResult(classname, "Test" + j, time,
+							"Error", "Object not found: Aliases.browser.page" + j));
+				} else {
+					suite.addTestResult(new TestResult(classname, "Test" + j, time));
+				}
+			}
+			results.add(suite);
+		}
+	}
+
+	@Benchmark
+	public int getTestSuitResultXml() {
+		int length = 0;
+		for (TestSuiteResult suite : results) {
+			length += suite.getTestSuitResultXml().length();
+		}
+		return length;
+	}
+}
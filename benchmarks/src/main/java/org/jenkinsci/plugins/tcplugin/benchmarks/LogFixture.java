@@ -0,0 +1,157 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic TestComplete log directories
+ * (root.xml and one _TestLog.xml file per test).
+ *
+ */
+public class LogFixture {
+
+	private int tests = 1000;
+	private int depth = 3;
+	private double failureRatio = 0.1;
+	private long seed = 42;
+
+	private int written;
+
+	/**
+	 * @param tests Number of test items.
+	 */
+	public LogFixture tests(int tests) {
+		this.tests = tests;
+		return this;
+	}
+
+	/**
+	 * @param depth Number of group levels above test items.
+	 */
+	public LogFixture depth(int depth) {
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * @param failureRatio Share of failed tests.
+	 */
+	public LogFixture failureRatio(double failureRatio) {
+		this.failureRatio = failureRatio;
+		return this;
+	}
+
+	public LogFixture seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Write log directory.
+	 *
+	 * @param dir Directory to write to. Created if missing.
+	 * @throws IOException
+	 */
+	public void write(File dir) throws IOException {
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to create " + dir);
+		}
+
+		Random random = new Random(seed);
+		int branch = Math.max(2, (int) Math.ceil(Math.pow(tests, 1.0 / Math.max(1, depth))));
+		written = 0;
+
+		Writer root = open(new File(dir, "root.xml"));
+		try {
+			root.write("<LogData name=\"Suite\" status=\"2\">\n");
+			writeGroup(root, dir, random, 1, branch, "Suite");
+			root.write("</LogData>\n");
+		} finally {
+			root.close();
+		}
+	}
+
+	private void writeGroup(Writer root, File dir, Random random, int level, int branch, String path) throws IOException {
+
+		if (level >= depth) {
+			for (int i = 0; i < branch && written < tests; i++) {
+				writeTest(root, dir, random, written++);
+			}
+			return;
+		}
+
+		for (int i = 0; i < branch && written < tests; i++) {
+			String name = path + " Group " + i;
+			root.write("<LogData name=\"" + name + "\" status=\"0\">\n");
+			writeGroup(root, dir, random, level + 1, branch, name);
+			root.write("</LogData>\n");
+		}
+
+		//Groups are full: the rest goes to the last level
+		if (level == 1) {
+			while (written < tests) {
+				writeTest(root, dir, random, written++);
+			}
+		}
+	}
+
+	private void writeTest(Writer root, File dir, Random random, int index) throws IOException {
+
+		boolean failed = random.nextDouble() < failureRatio;
+		String log = "test" + index + "_TestLog.xml";
+
+		root.write("<LogData name=\"Test " + index + "\" status=\"" + (failed ? 2 : 0) + "\">\n");
+		root.write("<Provider name=\"Test " + index + "\" href=\"" + log + "\"/>\n");
+		root.write("<LogData name=\"Test " + index + " log\" status=\"" + (failed ? 2 : 0) + "\">\n");
+		root.write("<Provider name=\"Log\" href=\"" + log + "\"/>\n");
+		root.write("</LogData>\n");
+		root.write("</LogData>\n");
+
+		Writer out = open(new File(dir, log));
+		try {
+			out.write("<Log>\n");
+			out.write("<RunTime>00:0" + random.nextInt(10) + ":" + (10 + random.nextInt(50)) + "</RunTime>\n");
+			if (failed) {
+				out.write("<Message>Object not found: Aliases.browser.page" + random.nextInt(100) + "</Message>\n");
+			}
+			for (int i = 0; i < 5; i++) {
+				out.write("<Message>Step " + i + " of test " + index + " passed</Message>\n");
+			}
+			out.write("</Log>\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin.benchmarks;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.tcplugin.ResultParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Parsing of a synthetic TestComplete log directory into JUnit XML,
+ * in memory and written to a file.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResultParserBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int tests;
+
+	@Param({"3"})
+	public int depth;
+
+	@Param({"0.1"})
+	public double failureRatio;
+
+	private File dir;
+	private FilePath logs;
+	private FilePath report;
+
+	@Setup(Level.Trial)
+	public void createFixture() throws IOException {
+		dir = Fixtures.createTempDir("logs");
+		File logDir = new File(dir, "log");
+		new LogFixture().tests(tests).depth(depth).failureRatio(failureRatio).write(logDir);
+		logs = new FilePath(logDir);
+		report = new FilePath(new File(dir, "junitreport.xml"));
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFixture() throws IOException, InterruptedException {
+		new FilePath(dir).deleteRecursive();
+	}
+
+	@Benchmark
+	public String getResultXml() throws IOException, InterruptedException {
+		return ResultParser.getResultXml(logs);
+	}
+
+	@Benchmark
+	public FilePath generateJUnitXML() throws IOException, InterruptedException {
+		ResultParser.generateJUnitXML(logs, report);
+		return report;
+	}
+}
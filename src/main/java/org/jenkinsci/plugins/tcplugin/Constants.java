@@ -31,7 +31,13 @@ package org.jenkinsci.plugins.tcplugin;
 public interface Constants {
     
 	public static String MHT_PARSE_DESTINATION = "MHTParse";
+	public static String MHT_PARSE_TRASH = "MHTParse.trash";
 	public static String JUNIR_REPORT = "junitreport.xml";	
 	public static String ROOT_XML = "root.xml";
+	public static String SUMMARY_XML = "tc-summary.xml";
+	public static String MESSAGE_INDEX = "tc-index.gz";
+	public static String RESULT_EXPORT = "tc-results.gz";
+	public static String RESULT_INDEX = "tc-results.idx";
+	public static String RESULT_BUILDING = "tc-results.building";
 
 }
@@ -0,0 +1,102 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.RunAction2;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Build-level export of TestComplete results as newline-delimited JSON, one test per line.
+ * Streamed from {@link ResultExport} records, neither JUnit results nor the build result tree are walked.
+ * Query parameters: <i>fields</i>, comma separated, and <i>status</i>, <i>failed</i> or <i>passed</i>.
+ * Not shown in the side panel.
+ *
+ */
+public class ExportAction implements RunAction2 {
+
+	private static final String ACTION_NAME = "TestComplete results export";
+	private static final String ACTION_URL = "tc-results";
+
+	private transient Run<?, ?> run;
+
+	public ExportAction(Run<?, ?> run) {
+		this.run = run;
+	}
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	/**
+	 * Stream tests of the build.
+	 *
+	 * @param req Request.
+	 * @param rsp Response.
+	 * @throws IOException
+	 */
+	public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		ResultExport export;
+		try {
+			export = new ResultExport(req.getParameter("fields"), req.getParameter("status"));
+		} catch (IllegalArgumentException e) {
+			rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		rsp.setContentType(ResultExport.CONTENT_TYPE);
+		Writer out = rsp.getCompressedWriter(req);
+		try {
+			export.write(run.getRootDir(), null, out);
+		} finally {
+			out.close();
+		}
+	}
+}
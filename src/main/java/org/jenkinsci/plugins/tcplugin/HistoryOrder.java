@@ -0,0 +1,131 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders projects of a suite by their history, so a broken build shows its failures early:
+ * projects failed most recently go first, then the shorter ones.
+ * Projects without history are taken for short ones.
+ *
+ */
+public class HistoryOrder {
+
+	/**
+	 * Number of previous builds to look at.
+	 */
+	public static int HISTORY = Integer.getInteger(HistoryOrder.class.getName() + ".history", 10);
+
+	/**
+	 * Number of builds since the last failure of a project. Absent if it did not fail.
+	 */
+	private final Map<String, Integer> lastFailure = new HashMap<String, Integer>();
+
+	/**
+	 * Average duration of a project, seconds.
+	 */
+	private final Map<String, Long> duration = new HashMap<String, Long>();
+
+	/**
+	 * @param history Summaries of previous builds, the latest first.
+	 */
+	public HistoryOrder(List<ResultSummary> history) {
+		Map<String, Integer> runs = new HashMap<String, Integer>();
+		Map<String, Long> total = new HashMap<String, Long>();
+		for (int i = 0; i < history.size(); i++) {
+			for (ResultSummary.Part project : history.get(i).getProjects()) {
+				String name = project.getName();
+				if (project.getFailed() > 0 && !lastFailure.containsKey(name)) {
+					lastFailure.put(name, i);
+				}
+				Long t = total.get(name);
+				Integer n = runs.get(name);
+				total.put(name, (t == null ? 0 : t) + project.getDuration());
+				runs.put(name, (n == null ? 0 : n) + 1);
+			}
+		}
+		for (Map.Entry<String, Long> entry : total.entrySet()) {
+			duration.put(entry.getKey(), entry.getValue() / runs.get(entry.getKey()));
+		}
+	}
+
+	/**
+	 * Load summaries of up to {@link #HISTORY} completed builds before the given one.
+	 *
+	 * @param build Current build.
+	 * @return Order by history of the builds.
+	 * @throws IOException
+	 */
+	public static HistoryOrder of(Run<?, ?> build) throws IOException {
+		List<ResultSummary> history = new ArrayList<ResultSummary>();
+		Run<?, ?> previous = build.getPreviousCompletedBuild();
+		for (int i = 0; i < HISTORY && previous != null; i++) {
+			ResultSummary summary = ResultSummary.load(previous);
+			if (summary != null) {
+				history.add(summary);
+			}
+			previous = previous.getPreviousCompletedBuild();
+		}
+		return new HistoryOrder(history);
+	}
+
+	/**
+	 * Sort projects.
+	 *
+	 * @param projects Project names.
+	 * @return Projects in run order.
+	 */
+	public List<String> sort(List<String> projects) {
+		List<String> result = new ArrayList<String>(projects);
+		Collections.sort(result, new Comparator<String>() {
+			public int compare(String a, String b) {
+				int c = compare(lastFailure.get(a), lastFailure.get(b));
+				if (c != 0) {
+					return c;
+				}
+				Long da = duration.get(a);
+				Long db = duration.get(b);
+				long ta = da == null ? 0 : da;
+				long tb = db == null ? 0 : db;
+				return ta < tb ? -1 : (ta == tb ? 0 : 1);
+			}
+
+			private int compare(Integer a, Integer b) {
+				if (a == null || b == null) {
+					return a == null ? (b == null ? 0 : 1) : -1;
+				}
+				return a.compareTo(b);
+			}
+		});
+		return result;
+	}
+}
@@ -0,0 +1,257 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import htmlpublisher.HtmlPublisherTarget;
+import hudson.Util;
+import hudson.model.DirectoryBrowserSupport;
+import hudson.model.Run;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.RunAction2;
+
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Build-level action serving the archived HTML report.
+ * Report files never change once the build is published, so they are served with strong ETags
+ * and long-term caching. Text files are gzipped on the fly, large files support byte ranges.
+ * Report is user content, so it gets the same Content-Security-Policy as Jenkins sets for workspace
+ * and artifact browsing, see {@link #CSP}.
+ * Further publishes of the same build get their own action, e.g. <i>tc-html-2</i>.
+ *
+ */
+public class HtmlReportAction implements RunAction2 {
+
+	private static final String ACTION_NAME = "TestComplete HTML report";
+	private static final String ACTION_ICON_NAME = "graph.gif";
+	private static final String ACTION_URL = "tc-html";
+	private static final String INDEX_HTML = "index.htm";
+
+	/**
+	 * Directory of HTML Publisher plugin archives in the build directory.
+	 */
+	private static final String HTML_REPORTS_DIR = "htmlreports";
+
+	/**
+	 * Content-Security-Policy of the report, shared with {@link DirectoryBrowserSupport}. Empty for none.
+	 */
+	static final String CSP = System.getProperty(DirectoryBrowserSupport.class.getName() + ".CSP",
+			"sandbox; default-src 'none'; img-src 'self'; style-src 'self';");
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+	private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+	static {
+		CONTENT_TYPES.put("htm", "text/html");
+		CONTENT_TYPES.put("html", "text/html");
+		CONTENT_TYPES.put("xml", "text/xml");
+		CONTENT_TYPES.put("xsl", "text/xml");
+		CONTENT_TYPES.put("js", "application/javascript");
+		CONTENT_TYPES.put("css", "text/css");
+		CONTENT_TYPES.put("png", "image/png");
+		CONTENT_TYPES.put("jpg", "image/jpeg");
+		CONTENT_TYPES.put("gif", "image/gif");
+	}
+
+	/**
+	 * Report name as given to HTML Publisher plugin.
+	 */
+	private final String reportName;
+
+	/**
+	 * Number of the publish within the build, null for the first one.
+	 */
+	private final String publish;
+
+	private transient Run<?, ?> run;
+
+	public HtmlReportAction(Run<?, ?> run, String reportName, String publish) {
+		this.run = run;
+		this.reportName = reportName;
+		this.publish = publish;
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return publish == null ? ACTION_NAME : ACTION_NAME + " " + publish;
+	}
+
+	public String getUrlName() {
+		return publish == null ? ACTION_URL : ACTION_URL + "-" + publish;
+	}
+
+	public String getReportName() {
+		return reportName;
+	}
+
+	/**
+	 * @return Report directory archived by HTML Publisher plugin, named the way it names it.
+	 */
+	public File getReportDir() {
+		String name = new HtmlPublisherTarget(reportName, "", INDEX_HTML, true, true, false).getSanitizedName();
+		return new File(new File(run.getRootDir(), HTML_REPORTS_DIR), name);
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	/**
+	 * Serve report file.
+	 * 
+	 * @param req Request.
+	 * @param rsp Response.
+	 * @throws IOException
+	 */
+	public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+
+		String path = req.getRestOfPath();
+		if (path.length() == 0) {
+			//Relative links of the report only work under a trailing slash
+			rsp.sendRedirect2(req.getRequestURI() + "/" + INDEX_HTML);
+			return;
+		}
+		if (path.equals("/")) {
+			path = "/" + INDEX_HTML;
+		}
+		path = path.substring(1);
+
+		File dir = getReportDir();
+		File file = new File(dir, path);
+		if (!file.isFile()
+				|| !file.getCanonicalPath().startsWith(dir.getCanonicalPath() + File.separator)) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		//Served from the Jenkins origin: no scripts of the report unless the administrator allows them
+		rsp.setHeader("X-Content-Type-Options", "nosniff");
+		if (CSP.trim().length() != 0) {
+			rsp.setHeader("Content-Security-Policy", CSP);
+			rsp.setHeader("X-Content-Security-Policy", CSP);
+			rsp.setHeader("X-WebKit-CSP", CSP);
+		}
+
+		String type = getContentType(file.getName());
+		boolean text = type.startsWith("text/") || type.equals("application/javascript");
+		String encodings = req.getHeader("Accept-Encoding");
+		String range = req.getHeader("Range");
+		boolean gzip = text && encodings != null && encodings.contains("gzip") && range == null;
+
+		//Strong validator of the exact representation: build, file and encoding
+		String etag = "\"" + Util.getDigestOf(run.getExternalizableId() + "/" + path + ":"
+				+ file.length() + ":" + file.lastModified()) + (gzip ? "-gz" : "") + "\"";
+
+		rsp.setHeader("ETag", etag);
+		rsp.setHeader("Cache-Control", "private, max-age=31536000");
+		if (text) {
+			rsp.setHeader("Vary", "Accept-Encoding");
+		}
+		if (etag.equals(req.getHeader("If-None-Match"))) {
+			rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		rsp.setContentType(type);
+		boolean head = "HEAD".equals(req.getMethod());
+
+		if (gzip) {
+			rsp.setHeader("Content-Encoding", "gzip");
+			if (!head) {
+				OutputStream out = new GZIPOutputStream(rsp.getOutputStream());
+				copy(file, 0, file.length(), out);
+				out.close();
+			}
+			return;
+		}
+
+		long length = file.length();
+		long start = 0;
+		long end = length - 1;
+		rsp.setHeader("Accept-Ranges", "bytes");
+
+		//Range of another version of the file is ignored
+		String ifRange = req.getHeader("If-Range");
+		Matcher matcher = range == null ? null : RANGE.matcher(range.trim());
+		if (matcher != null && matcher.matches() && (ifRange == null || ifRange.equals(etag))) {
+			if (matcher.group(1).length() > 0) {
+				start = Long.parseLong(matcher.group(1));
+				if (matcher.group(2).length() > 0) {
+					end = Math.min(Long.parseLong(matcher.group(2)), length - 1);
+				}
+			} else if (matcher.group(2).length() > 0) {
+				//Suffix range: last N bytes
+				start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+			}
+			if (start > end || start >= length) {
+				rsp.setHeader("Content-Range", "bytes */" + length);
+				rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			rsp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+		}
+
+		rsp.setHeader("Content-Length", String.valueOf(end - start + 1));
+		if (!head) {
+			copy(file, start, end - start + 1, rsp.getOutputStream());
+		}
+	}
+
+	private static String getContentType(String name) {
+		String type = CONTENT_TYPES.get(name.substring(name.lastIndexOf('.') + 1).toLowerCase());
+		return type == null ? "application/octet-stream" : type;
+	}
+
+	private static void copy(File file, long offset, long length, OutputStream out) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			IOUtils.skipFully(in, offset);
+			IOUtils.copyLarge(in, out, 0, length);
+		} finally {
+			in.close();
+		}
+	}
+}
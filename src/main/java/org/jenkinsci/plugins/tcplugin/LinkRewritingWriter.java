@@ -0,0 +1,110 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer pointing links to files of one type to another location on the fly,
+ * e.g. <i>http://localhost/shot1.png</i> to <i>../tc-screenshots/shot1.png</i>.
+ * Links to other files are written as is.
+ * Link prefix is matched by {@link ReplacingWriter}, the file name after it is collected here.
+ *
+ */
+public class LinkRewritingWriter extends ReplacingWriter {
+
+	/**
+	 * Longer file names are not links to rewrite.
+	 */
+	private static final int MAX_NAME = 255;
+
+	private final String prefix;
+	private final String extension;
+	private final String with;
+	private StringBuilder name = null;
+
+	/**
+	 * LinkRewritingWriter constructor.
+	 *
+	 * @param out Writer to write result to.
+	 * @param prefix Link prefix followed by the file name, e.g. <i>http://localhost/</i>. Should not be empty.
+	 * @param extension File extension, e.g. <i>.png</i>. Case insensitive.
+	 * @param with Replacement of the prefix.
+	 */
+	public LinkRewritingWriter(Writer out, String prefix, String extension, String with) {
+		super(out, prefix, with);
+		this.prefix = prefix;
+		this.extension = extension.toLowerCase();
+		this.with = with;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+
+		char ch = (char) c;
+
+		if (name != null) {
+			if (isNameChar(ch) && name.length() < MAX_NAME) {
+				name.append(ch);
+				return;
+			}
+			writeLink();
+		}
+		super.write(ch);
+	}
+
+	/**
+	 * Prefix matched, the link is written once its file name is known.
+	 */
+	@Override
+	protected void replace() {
+		name = new StringBuilder();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (name != null) {
+			writeLink();
+		}
+		super.close();
+	}
+
+	/**
+	 * Write the link collected so far, rewritten if it refers to a file of the type.
+	 */
+	private void writeLink() throws IOException {
+		String link = name.toString();
+		name = null;
+		if (link.length() > extension.length() && link.toLowerCase().endsWith(extension)) {
+			out.write(with);
+		} else {
+			out.write(prefix);
+		}
+		out.write(link);
+	}
+
+	private static boolean isNameChar(char ch) {
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '-' || ch == '.';
+	}
+}
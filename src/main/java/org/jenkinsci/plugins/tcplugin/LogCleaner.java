@@ -0,0 +1,251 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Deletes TestComplete leftovers: <i>Log</i> folders of previous runs and <i>.tcCfgExtender</i> files.
+ * Only the folders of the project suite and its projects are looked at, never the whole workspace.
+ * Log folders are deleted on the node in parallel.
+ *
+ */
+public class LogCleaner {
+
+	/**
+	 * Number of threads deleting log folder contents.
+	 */
+	public static int THREADS = Integer.getInteger(LogCleaner.class.getName() + ".threads", 4);
+
+	private static final String LOG_DIR = "Log";
+	private static final String EXTENDER_EXT = ".tccfgextender";
+	private static final String SUITE_EXT = ".pjs";
+
+	/**
+	 * Delete <i>Log</i> folders of the project or of the suite and all its projects.
+	 * Files which cannot be deleted, e.g. locked by a running process, are reported and skipped.
+	 *
+	 * @param workspace Job workspace.
+	 * @param projectLocation Workspace-based or absolute location of .mds or .pjs file.
+	 * @param listener Build log to report failures to.
+	 * @return Deleted folders.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static List<String> deleteLogs(FilePath workspace, String projectLocation, TaskListener listener)
+			throws IOException, InterruptedException {
+		return workspace.act(new Clean(projectLocation, true, THREADS, listener));
+	}
+
+	/**
+	 * Delete <i>.tcCfgExtender</i> files beside the project or the suite and all its projects.
+	 * Files which cannot be deleted are reported and skipped.
+	 *
+	 * @param workspace Job workspace.
+	 * @param projectLocation Workspace-based or absolute location of .mds or .pjs file.
+	 * @param listener Build log to report failures to.
+	 * @return Deleted files.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static List<String> deleteExtenders(FilePath workspace, String projectLocation, TaskListener listener)
+			throws IOException, InterruptedException {
+		return workspace.act(new Clean(projectLocation, false, THREADS, listener));
+	}
+
+	/**
+	 * Folders of the project, or of the suite and its projects. TestComplete writes <i>Log</i> folders there.
+	 *
+	 * @param workspace Job workspace on the node.
+	 * @param projectLocation Workspace-based or absolute location of .mds or .pjs file.
+	 * @return Folders, the one of the project or the suite first.
+	 * @throws IOException If the suite cannot be read.
+	 */
+	static Set<File> getRoots(File workspace, String projectLocation) throws IOException {
+		File location = resolve(workspace, projectLocation);
+		Set<File> roots = new LinkedHashSet<File>();
+		roots.add(location.getParentFile());
+
+		if (location.getName().toLowerCase().endsWith(SUITE_EXT) && location.isFile()) {
+			InputStream in = new FileInputStream(location);
+			try {
+				for (String project : SuiteSharder.getProjectPaths(in)) {
+					roots.add(resolve(location.getParentFile(), project).getParentFile());
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * <i>Log</i> folders of the project, or of the suite and its projects. Folders may not exist yet.
+	 *
+	 * @param workspace Job workspace on the node.
+	 * @param projectLocation Workspace-based or absolute location of .mds or .pjs file.
+	 * @return Log folders.
+	 * @throws IOException If the suite cannot be read.
+	 */
+	static List<File> getLogDirs(File workspace, String projectLocation) throws IOException {
+		List<File> dirs = new ArrayList<File>();
+		for (File root : getRoots(workspace, projectLocation)) {
+			dirs.add(new File(root, LOG_DIR));
+		}
+		return dirs;
+	}
+
+	private static File resolve(File base, String path) {
+		File file = new File(path.replace('\\', File.separatorChar).replace('/', File.separatorChar));
+		return file.isAbsolute() ? file : new File(base, file.getPath());
+	}
+
+	private static final class Clean extends MasterToSlaveFileCallable<List<String>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String projectLocation;
+
+		/**
+		 * Delete Log folders if true, .tcCfgExtender files otherwise.
+		 */
+		private final boolean logs;
+
+		private final int threads;
+
+		private final TaskListener listener;
+
+		Clean(String projectLocation, boolean logs, int threads, TaskListener listener) {
+			this.projectLocation = projectLocation;
+			this.logs = logs;
+			this.threads = threads;
+			this.listener = listener;
+		}
+
+		public List<String> invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+			List<String> deleted = new ArrayList<String>();
+			for (File root : getRoots(workspace, projectLocation)) {
+				if (logs) {
+					File log = new File(root, LOG_DIR);
+					if (log.isDirectory()) {
+						deleted.add(log.getPath());
+					}
+				} else {
+					File[] files = root.listFiles();
+					if (files == null) {
+						continue;
+					}
+					for (File file : files) {
+						if (!file.getName().toLowerCase().endsWith(EXTENDER_EXT)) {
+							continue;
+						}
+						if (file.delete()) {
+							deleted.add(file.getPath());
+						} else {
+							warn("Failed to delete " + file);
+						}
+					}
+				}
+			}
+			if (logs) {
+				deleted.removeAll(delete(deleted));
+			}
+			return deleted;
+		}
+
+		private void warn(String message) {
+			listener.getLogger().println("----> WARN: " + message);
+			//NON-FATAL
+		}
+
+		/**
+		 * Delete folders, their entries in parallel. Entries which cannot be deleted are reported and skipped.
+		 *
+		 * @return Folders not deleted completely.
+		 */
+		private Set<String> delete(List<String> dirs) throws InterruptedException {
+			Set<String> failed = new LinkedHashSet<String>();
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+			try {
+				Map<Future<Void>, String> futures = new LinkedHashMap<Future<Void>, String>();
+				for (String dir : dirs) {
+					File[] children = new File(dir).listFiles();
+					if (children == null) {
+						continue;
+					}
+					for (final File child : children) {
+						futures.put(executor.submit(new Callable<Void>() {
+							public Void call() throws IOException {
+								Util.deleteRecursive(child);
+								return null;
+							}
+						}), dir);
+					}
+				}
+				for (Map.Entry<Future<Void>, String> future : futures.entrySet()) {
+					try {
+						future.getKey().get();
+					} catch (ExecutionException e) {
+						warn("Failed to delete log: " + e.getCause().getMessage());
+						failed.add(future.getValue());
+					}
+				}
+				for (String dir : dirs) {
+					if (failed.contains(dir)) {
+						continue;
+					}
+					try {
+						Util.deleteRecursive(new File(dir));
+					} catch (IOException e) {
+						warn("Failed to delete log: " + e.getMessage());
+						failed.add(dir);
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+			return failed;
+		}
+	}
+}
@@ -8,17 +8,33 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.xml.bind.DatatypeConverter;
 
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+
 /**
  * Class to parse and decompose *.mts file in its constituting parts.
  * 
  */
 public class MHTParser {
 
+	private static final Logger LOGGER = Logger.getLogger(MHTParser.class.getName());
+
 	public String BOUNDARY = "boundary";
 	public String CHAR_SET = "charset";
 	public String CONTENT_TYPE = "Content-Type";
@@ -28,8 +44,17 @@ public class MHTParser {
 	public String UTF16_BOM1 = "=FF=FE";
 	public String UTF16_BOM2 = "=FE=FF";
 
+	/**
+	 * Parts decoded and written concurrently at most. Bounds memory taken by their buffers.
+	 */
+	public static int MAX_PENDING_PARTS = Integer.getInteger(MHTParser.class.getName() + ".maxPendingParts", 8);
+
 	private FilePath mhtFile;
 	private FilePath outputFolder;
+	private Map<String, List<String[]>> rewrites = new HashMap<String, List<String[]>>();
+	private Map<String, List<String[]>> links = new HashMap<String, List<String[]>>();
+	private PublisherMetrics metrics = PublisherMetrics.DISABLED;
+	private Set<String> reserved = new HashSet<String>();
 
 
 	public MHTParser(FilePath mhtFile, FilePath outputFolder) {
@@ -37,8 +62,80 @@ public class MHTParser {
 		this.outputFolder = outputFolder;
 	}
 
+	/**
+	 * Set metrics to record bytes, parts and buffer sizes to.
+	 * 
+	 * @param metrics Publisher metrics.
+	 */
+	public void setMetrics(PublisherMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Replace a string in every text part of the given content type.
+	 * Replacement is done while the part is written, no extra pass over the file is needed.
+	 * 
+	 * @param contentType Part content type, e.g. <i>text/xml</i>.
+	 * @param what String to replace.
+	 * @param with Replacement string.
+	 */
+	public void addRewrite(String contentType, String what, String with) {
+		String key = contentType.toLowerCase();
+		List<String[]> list = rewrites.get(key);
+		if (list == null) {
+			list = new ArrayList<String[]>();
+			rewrites.put(key, list);
+		}
+		list.add(new String[] {what, with});
+	}
+
+	/**
+	 * Point links to files of one type in every text part of the given content type to another location.
+	 * Links are rewritten before the replacements of {@link #addRewrite(String, String, String)}.
+	 * 
+	 * @param contentType Part content type, e.g. <i>text/xml</i>.
+	 * @param prefix Link prefix followed by the file name, e.g. <i>http://localhost/</i>.
+	 * @param extension File extension, e.g. <i>.png</i>.
+	 * @param with Replacement of the prefix.
+	 */
+	public void addLinkRewrite(String contentType, String prefix, String extension, String with) {
+		String key = contentType.toLowerCase();
+		List<String[]> list = links.get(key);
+		if (list == null) {
+			list = new ArrayList<String[]>();
+			links.put(key, list);
+		}
+		list.add(new String[] {prefix, extension, with});
+	}
+
+	/**
+	 * Get replacements registered for the content type.
+	 * 
+	 * @param rewrites Replacements or link rewrites.
+	 * @param type Content-Type header value, may contain parameters.
+	 * @return List of {what, with} pairs or {prefix, extension, with} triples. May be empty.
+	 */
+	private List<String[]> getRewrites(Map<String, List<String[]>> rewrites, String type) {
+		List<String[]> list = rewrites.get(getBaseType(type));
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return list;
+	}
+
+	/**
+	 * Content type without parameters.
+	 * 
+	 * @param type Content-Type header value.
+	 * @return Lower case content type, e.g. <i>text/xml</i>.
+	 */
+	private static String getBaseType(String type) {
+		return type.trim().split("\\s+")[0].toLowerCase();
+	}
+
 	/**
 	 * Main method to decompose *.mts file in its constituting parts.
+	 * Parts are decoded and written on the shared {@link WorkerPool} while the file is read further.
 	 * 
 	 * @throws NullPointerException
 	 * @throws IOException
@@ -48,6 +145,7 @@ public class MHTParser {
 
 		InputStreamReader rd = null;
 		BufferedReader reader = null;
+		CountingInputStream in = null;
 
 		String type = "";
 		String encoding = "";
@@ -55,9 +153,11 @@ public class MHTParser {
 		String filename = "";
 		String charset = "utf-8";
 		StringBuilder buffer = null;
+		WorkerPool.Batch<Void> batch = new WorkerPool.Batch<Void>(MAX_PENDING_PARTS);
 
 		try {
-			rd = new InputStreamReader(mhtFile.read());
+			in = new CountingInputStream(mhtFile.read());
+			rd = new InputStreamReader(in);
 			reader = new BufferedReader(rd);
 
 			final String boundary = getBoundary(reader);
@@ -69,7 +169,7 @@ public class MHTParser {
 				String temp = line.trim();
 				if(temp.contains(boundary)) {
 					if(buffer != null) {
-						writeBufferContentToFile(buffer, encoding, filename, charset);
+						submit(batch, buffer, type, encoding, filename, charset);
 						buffer = null;
 					}
 					buffer = new StringBuilder();
@@ -88,14 +188,32 @@ public class MHTParser {
 					}
 				}
 			}
+			batch.join();
 			
 		} finally {		
+			batch.cancel();
 			if(reader != null) {
 				reader.close();
 			}
+			if(in != null) {
+				metrics.addBytesRead(in.getByteCount());
+			}
 		}
 	}
 
+	/**
+	 * Decode and write a part on the shared pool.
+	 */
+	private void submit(WorkerPool.Batch<Void> batch, final StringBuilder buffer, final String type,
+			final String encoding, final String filename, final String charset) throws IOException, InterruptedException {
+		batch.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				writeBufferContentToFile(buffer, type, encoding, filename, charset);
+				return null;
+			}
+		});
+	}
+
 	private String getCharSet(String temp) {
 		String t = temp.split("=")[1].trim();
 		return t.substring(1, t.length() - 1);
@@ -107,7 +225,7 @@ public class MHTParser {
 	 * @throws InterruptedException 
 	 * @throws IOException 
 	 */
-	private void writeBufferContentToFile(StringBuilder buffer, String encoding, String filename, String charset)
+	private void writeBufferContentToFile(StringBuilder buffer, String type, String encoding, String filename, String charset)
 			throws IOException, InterruptedException {
 
 		if(!outputFolder.exists()) {
@@ -116,10 +234,17 @@ public class MHTParser {
 
 		byte[] content = null; 
 		boolean text = true;
+		//Decoded base64 text is in the part charset, other content in the platform one
+		String contentCharset = null;
+
+		metrics.addPart(getBaseType(type));
+		metrics.updatePeakBuffer(buffer.length());
 
 		if(encoding.equalsIgnoreCase("base64")) {
 			content = getBase64EncodedString(buffer);
-			text = false;
+			//Text parts to rewrite are written as text whatever their encoding
+			text = !getRewrites(rewrites, type).isEmpty() || !getRewrites(links, type).isEmpty();
+			contentCharset = charset;
 		} else if(encoding.equalsIgnoreCase("quoted-printable")) {
 			content = getQuotedPrintableString(buffer);         
 		} else {
@@ -132,24 +257,38 @@ public class MHTParser {
 				bos = new BufferedOutputStream((new FilePath(outputFolder, filename)).write());
 				bos.write(content);
 				bos.flush();
+				metrics.addBytesWritten(content.length);
 			} finally {
-				bos.close();
+				if (bos != null) {
+					bos.close();
+				}
 			}
 		} else {
 			BufferedWriter bw = null;
+			CountingOutputStream out = null;
 			try {
-				System.out.println(filename);
-				bw = new BufferedWriter(new OutputStreamWriter((new FilePath(outputFolder, filename)).write(), charset));
-				bw.write(new String(content));
+				LOGGER.log(Level.FINE, "Writing {0}", filename);
+				out = new CountingOutputStream((new FilePath(outputFolder, filename)).write());
+				Writer writer = new OutputStreamWriter(out, charset);
+				for (String[] rewrite : getRewrites(rewrites, type)) {
+					writer = new ReplacingWriter(writer, rewrite[0], rewrite[1]);
+				}
+				//Outermost writer sees the original text first
+				for (String[] link : getRewrites(links, type)) {
+					writer = new LinkRewritingWriter(writer, link[0], link[1], link[2]);
+				}
+				bw = new BufferedWriter(writer);
+				bw.write(contentCharset != null ? new String(content, contentCharset) : new String(content));
 				bw.flush();
-			} catch (IOException e1){
-				e1.printStackTrace();
-
 			} finally {
-				try {
+				//Failed writes fail the publish, a report with missing parts is not published
+				if (bw != null) {
 					bw.close();
-				} catch (IOException e2) {
-					e2.printStackTrace();
+				} else if (out != null) {
+					out.close();
+				}
+				if (out != null) {
+					metrics.addBytesWritten(out.getByteCount());
 				}
 			}
 		}
@@ -206,7 +345,10 @@ public class MHTParser {
 
 	/**
 	 * Returns a qualified unique output file path for the parsed path.</br>
-	 * In case the file already exist it appends a numarical value a continues
+	 * In case the file already exist it appends a numarical value a continues.
+	 * Names of parts not written yet are reserved.
+	 * The value follows a '~', which part names never contain, so a renamed part never takes
+	 * the name of a later part that links, e.g. to screenshots, refer to.
 	 * @throws InterruptedException 
 	 * @throws IOException 
 	 */
@@ -214,14 +356,15 @@ public class MHTParser {
 		int i = 1;
 		FilePath file = new FilePath(outputFolder, name + "." + ext);
 
-		if(file.exists()) {
+		if(reserved.contains(file.getRemote()) || file.exists()) {
 			while(true) {
-				file = new FilePath(outputFolder, name + i + "." + ext);
-				if(!file.exists())
-					return file.getRemote();
+				file = new FilePath(outputFolder, name + "~" + i + "." + ext);
+				if(!reserved.contains(file.getRemote()) && !file.exists())
+					break;
 				i++;
 			}
 		}
+		reserved.add(file.getRemote());
 		return file.getRemote();
 	}
 
@@ -0,0 +1,316 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+
+/**
+ * Inverted index of test log messages of a build: token to tests whose messages contain it.
+ * Stored beside the build in {@link Constants#MESSAGE_INDEX} as gzipped text,
+ * messages themselves are not stored.
+ *
+ */
+public class MessageIndex implements Constants {
+
+	private static final String TEST = "T";
+	private static final String TOKEN = "W";
+	private static final int MIN_TOKEN = 2;
+	private static final int MAX_TOKEN = 64;
+
+	/**
+	 * Number of loaded indexes kept in memory between searches.
+	 */
+	private static final int CACHE_SIZE = 500;
+
+	private static final Map<String, SoftReference<MessageIndex>> CACHE =
+			new LinkedHashMap<String, SoftReference<MessageIndex>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SoftReference<MessageIndex>> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			};
+
+	private final List<String> tests = new ArrayList<String>();
+	private final Map<String, List<Integer>> postings = new TreeMap<String, List<Integer>>();
+
+	/**
+	 * Index of all messages of parsed suites.
+	 *
+	 * @param suites Parsed suites.
+	 * @return New index.
+	 */
+	public static MessageIndex of(List<TestSuiteResult> suites) {
+		MessageIndex index = new MessageIndex();
+		for (TestSuiteResult suite : suites) {
+			for (TestResult result : suite.getTestResults()) {
+				index.add(suite.getName() + " / " + result.getName(), result.getMessages());
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Add test with its messages.
+	 *
+	 * @param test Test display name.
+	 * @param messages Log messages of the test.
+	 */
+	public void add(String test, Collection<String> messages) {
+		int id = tests.size();
+		tests.add(test);
+		for (String message : messages) {
+			for (String token : tokenize(message)) {
+				addPosting(token, id);
+			}
+		}
+	}
+
+	/**
+	 * Add all tests of another index.
+	 *
+	 * @param other Index to add.
+	 */
+	public void add(MessageIndex other) {
+		int offset = tests.size();
+		tests.addAll(other.tests);
+		for (Map.Entry<String, List<Integer>> entry : other.postings.entrySet()) {
+			for (Integer id : entry.getValue()) {
+				addPosting(entry.getKey(), offset + id);
+			}
+		}
+	}
+
+	private void addPosting(String token, int id) {
+		List<Integer> ids = postings.get(token);
+		if (ids == null) {
+			ids = new ArrayList<Integer>();
+			postings.put(token, ids);
+		}
+		//Ids only grow, so a duplicate can only be the last one
+		if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+			ids.add(id);
+		}
+	}
+
+	/**
+	 * Tests whose messages contain all words of the query.
+	 *
+	 * @param query Search query, e.g. <i>Object not found: Aliases.browser.pageLogin</i>.
+	 * @return Matching tests in publish order. Empty for an empty query.
+	 */
+	public List<String> search(String query) {
+
+		Set<String> tokens = tokenize(query);
+		List<String> result = new ArrayList<String>();
+		if (tokens.isEmpty()) {
+			return result;
+		}
+
+		//Intersect sorted posting lists, starting from the first one
+		List<Integer> matches = null;
+		for (String token : tokens) {
+			List<Integer> ids = postings.get(token);
+			if (ids == null) {
+				return result;
+			}
+			matches = matches == null ? ids : intersect(matches, ids);
+			if (matches.isEmpty()) {
+				return result;
+			}
+		}
+		for (Integer id : matches) {
+			result.add(tests.get(id));
+		}
+		return result;
+	}
+
+	private static List<Integer> intersect(List<Integer> a, List<Integer> b) {
+		List<Integer> result = new ArrayList<Integer>();
+		int i = 0;
+		int j = 0;
+		while (i < a.size() && j < b.size()) {
+			int x = a.get(i);
+			int y = b.get(j);
+			if (x == y) {
+				result.add(x);
+				i++;
+				j++;
+			} else if (x < y) {
+				i++;
+			} else {
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Split text to lower case words.
+	 *
+	 * @param text Text to split.
+	 * @return Distinct words in order of appearance.
+	 */
+	static Set<String> tokenize(String text) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}_]+")) {
+			if (token.length() >= MIN_TOKEN && token.length() <= MAX_TOKEN) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Write index to a file.
+	 *
+	 * @param file File to write.
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), "UTF-8"));
+		try {
+			for (String test : tests) {
+				out.write(TEST + "\t" + test.replace('\t', ' ').replace('\n', ' ') + "\n");
+			}
+			for (Map.Entry<String, List<Integer>> entry : postings.entrySet()) {
+				out.write(TOKEN + "\t" + entry.getKey());
+				char separator = '\t';
+				for (Integer id : entry.getValue()) {
+					out.write(separator);
+					out.write(Integer.toString(id));
+					separator = ' ';
+				}
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read index from a file.
+	 *
+	 * @param file File to read.
+	 * @return Index.
+	 * @throws IOException
+	 */
+	public static MessageIndex load(File file) throws IOException {
+		MessageIndex index = new MessageIndex();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields[0].equals(TEST)) {
+					index.tests.add(fields.length > 1 ? fields[1] : "");
+				} else if (fields[0].equals(TOKEN) && fields.length > 2) {
+					List<Integer> ids = new ArrayList<Integer>();
+					for (String id : fields[2].split(" ")) {
+						ids.add(Integer.valueOf(id));
+					}
+					index.postings.put(fields[1], ids);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return index;
+	}
+
+	/**
+	 * Index of the build, loaded once and kept in memory while there is enough of it.
+	 *
+	 * @param buildDir Build directory.
+	 * @return Index or null if the build has none.
+	 * @throws IOException
+	 */
+	public static MessageIndex get(File buildDir) throws IOException {
+		File file = new File(buildDir, MESSAGE_INDEX);
+		if (!file.isFile()) {
+			return null;
+		}
+		String key = file.getPath() + ":" + file.lastModified();
+		synchronized (CACHE) {
+			SoftReference<MessageIndex> ref = CACHE.get(key);
+			MessageIndex index = ref == null ? null : ref.get();
+			if (index != null) {
+				return index;
+			}
+		}
+		MessageIndex index = load(file);
+		synchronized (CACHE) {
+			CACHE.put(key, new SoftReference<MessageIndex>(index));
+		}
+		return index;
+	}
+
+	/**
+	 * Add messages of parsed suites to the index of the build.
+	 * Index of an earlier publish in the same build is extended.
+	 *
+	 * @param run Build.
+	 * @param suites Parsed suites.
+	 * @throws IOException
+	 */
+	public static void publish(Run<?, ?> run, List<TestSuiteResult> suites) throws IOException {
+		synchronized (run) {
+			File file = new File(run.getRootDir(), MESSAGE_INDEX);
+			MessageIndex index = new MessageIndex();
+			if (file.isFile()) {
+				index.add(load(file));
+			}
+			index.add(of(suites));
+
+			File tmp = new File(run.getRootDir(), MESSAGE_INDEX + ".tmp");
+			index.save(tmp);
+			if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("Failed to save " + file);
+			}
+		}
+	}
+}
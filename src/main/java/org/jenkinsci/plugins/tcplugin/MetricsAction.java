@@ -0,0 +1,172 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Action;
+import hudson.model.Api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Build-level action with publisher figures: stage times, I/O and parsing counters.
+ * Available through remote API as <i>tc-metrics/api/json</i>.
+ * Further publishes of the same build get their own action, e.g. <i>tc-metrics-2</i>.
+ * 
+ */
+@ExportedBean
+public class MetricsAction implements Action {
+
+	private static final String ACTION_NAME = "TestComplete publisher metrics";
+	private static final String ACTION_ICON_NAME = "clock.png";
+	private static final String ACTION_URL = "tc-metrics";
+
+	private final Map<String, Long> stageTimes;
+	private final Map<String, Long> parts;
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final long testsParsed;
+	private final long xmlFilesOpened;
+	private final long peakBuffer;
+
+	/**
+	 * Number of the publish within the build, null for the first one.
+	 */
+	private final String publish;
+
+	MetricsAction(Map<String, Long> stageTimes,
+			Map<String, Long> parts,
+			long bytesRead,
+			long bytesWritten,
+			long testsParsed,
+			long xmlFilesOpened,
+			long peakBuffer,
+			String publish) {
+
+		this.stageTimes = stageTimes;
+		this.parts = parts;
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.testsParsed = testsParsed;
+		this.xmlFilesOpened = xmlFilesOpened;
+		this.peakBuffer = peakBuffer;
+		this.publish = publish;
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return publish == null ? ACTION_NAME : ACTION_NAME + " " + publish;
+	}
+
+	public String getUrlName() {
+		return publish == null ? ACTION_URL : ACTION_URL + "-" + publish;
+	}
+
+	public Api getApi() {
+		return new Api(this);
+	}
+
+	/**
+	 * @return Wall time of each stage, milliseconds.
+	 */
+	@Exported
+	public List<Counter> getStageTimes() {
+		return toCounters(stageTimes);
+	}
+
+	/**
+	 * @return Number of decoded MHTML parts by content type.
+	 */
+	@Exported
+	public List<Counter> getParts() {
+		return toCounters(parts);
+	}
+
+	@Exported
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Exported
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	@Exported
+	public long getTestsParsed() {
+		return testsParsed;
+	}
+
+	@Exported
+	public long getXmlFilesOpened() {
+		return xmlFilesOpened;
+	}
+
+	/**
+	 * @return Largest in-memory buffer (MHTML part or JUnit xml), characters.
+	 */
+	@Exported
+	public long getPeakBuffer() {
+		return peakBuffer;
+	}
+
+	private static List<Counter> toCounters(Map<String, Long> map) {
+		List<Counter> list = new ArrayList<Counter>();
+		for (Map.Entry<String, Long> entry : map.entrySet()) {
+			list.add(new Counter(entry.getKey(), entry.getValue()));
+		}
+		return list;
+	}
+
+	/**
+	 * Named value for remote API.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static final class Counter {
+
+		private final String name;
+		private final long value;
+
+		Counter(String name, long value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		@Exported
+		public String getName() {
+			return name;
+		}
+
+		@Exported
+		public long getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Project-level export of TestComplete results of the builds after a given one, see {@link ExportAction}.
+ * Every line carries the build number. Builds are read straight from their directories, oldest first.
+ * Query parameters: <i>since</i>, build number to start after, plus those of {@link ExportAction}.
+ * A build still running and the builds after it are left for a later request,
+ * so polling with the last build number seen misses none and never reads a partly written export.
+ * Not shown in the side panel.
+ *
+ */
+public class ProjectExportAction implements Action {
+
+	private static final Logger LOGGER = Logger.getLogger(ProjectExportAction.class.getName());
+
+	private static final String ACTION_NAME = "TestComplete results export";
+	private static final String ACTION_URL = "tc-results";
+
+	/**
+	 * Number of the latest builds exported at most.
+	 */
+	public static int MAX_BUILDS = Integer.getInteger(ProjectExportAction.class.getName() + ".maxBuilds", 100);
+
+	private final Job<?, ?> project;
+
+	public ProjectExportAction(Job<?, ?> project) {
+		this.project = project;
+	}
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Job<?, ?> getProject() {
+		return project;
+	}
+
+	/**
+	 * Stream tests of the builds after <i>since</i>.
+	 *
+	 * @param req Request.
+	 * @param rsp Response.
+	 * @throws IOException
+	 */
+	public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+		ResultExport export;
+		int since;
+		try {
+			export = new ResultExport(req.getParameter("fields"), req.getParameter("status"));
+			String value = req.getParameter("since");
+			since = value == null || value.length() == 0 ? 0 : Integer.parseInt(value);
+		} catch (IllegalArgumentException e) {
+			rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+		File buildDir = project.getBuildDir();
+		rsp.setContentType(ResultExport.CONTENT_TYPE);
+		Writer out = rsp.getCompressedWriter(req);
+		try {
+			List<Integer> numbers = SearchAction.getBuildNumbers(project, MAX_BUILDS);
+			for (Integer number : ResultExport.since(buildDir, numbers, since, getOldestBuilding(numbers, since))) {
+				export.write(new File(buildDir, String.valueOf(number)), number, out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Oldest build after <i>since</i> that is still running.
+	 * Only builds with the marker of {@link Tracker} are loaded, to confirm they still run.
+	 *
+	 * @param numbers Numbers of the latest builds, newest first.
+	 * @param since Build number to start after.
+	 * @return Build number or {@link Integer#MAX_VALUE} if none is running.
+	 */
+	private int getOldestBuilding(List<Integer> numbers, int since) {
+		int oldest = Integer.MAX_VALUE;
+		File buildDir = project.getBuildDir();
+		for (Integer number : numbers) {
+			if (number <= since) {
+				break;
+			}
+			File marker = new File(new File(buildDir, String.valueOf(number)), Constants.RESULT_BUILDING);
+			if (!marker.isFile()) {
+				continue;
+			}
+			Run<?, ?> run = project.getBuildByNumber(number);
+			if (run != null && run.isBuilding()) {
+				oldest = number;
+			} else if (!marker.delete()) {
+				//Left by a build killed with the controller, deleted to not load it again
+				LOGGER.log(Level.WARNING, "Failed to delete " + marker);
+			}
+		}
+		return oldest;
+	}
+
+	/**
+	 * Marks running builds of projects with the export in their directories,
+	 * so running builds are found without loading the finished ones.
+	 */
+	@Extension
+	public static final class Tracker extends RunListener<Run<?, ?>> {
+
+		@Override
+		public void onStarted(Run<?, ?> run, TaskListener listener) {
+			if (run.getParent().getAction(ProjectExportAction.class) == null) {
+				return;
+			}
+			try {
+				new FileOutputStream(new File(run.getRootDir(), Constants.RESULT_BUILDING)).close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to mark " + run + " as running", e);
+			}
+		}
+
+		@Override
+		public void onCompleted(Run<?, ?> run, TaskListener listener) {
+			File marker = new File(run.getRootDir(), Constants.RESULT_BUILDING);
+			if (marker.exists() && !marker.delete()) {
+				LOGGER.log(Level.WARNING, "Failed to delete " + marker);
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+
+import jenkins.MasterToSlaveFileCallable;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Plugin-wide admission control of publishes.
+ * Limits the number of publishes decompressing, parsing and copying reports at the same time
+ * and the memory they are estimated to take. Waiting publishes are admitted in arrival order.
+ *
+ */
+final class PublishAdmission {
+
+	/**
+	 * Estimated memory taken by a publish per byte of its input.
+	 */
+	public static int MEMORY_FACTOR = Integer.getInteger(PublishAdmission.class.getName() + ".memoryFactor", 4);
+
+	private static final PublishAdmission INSTANCE = new PublishAdmission();
+
+	private final LinkedList<Ticket> queue = new LinkedList<Ticket>();
+
+	private int maxPublishes;
+	private long maxMemory;
+	private int running;
+	private long reserved;
+
+	private PublishAdmission() {
+	}
+
+	static PublishAdmission get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Set limits. Waiting publishes are rechecked at once.
+	 *
+	 * @param maxPublishes Publishes running at the same time. 0 for no limit.
+	 * @param maxMemory Estimated memory of publishes running at the same time, bytes. 0 for no limit.
+	 */
+	synchronized void configure(int maxPublishes, long maxMemory) {
+		this.maxPublishes = maxPublishes;
+		this.maxMemory = maxMemory;
+		notifyAll();
+	}
+
+	/**
+	 * Wait until the publish fits the limits and all publishes queued before it are admitted.
+	 * A publish larger than the memory limit is admitted when nothing else is running.
+	 *
+	 * @param memory Estimated memory of the publish, bytes.
+	 * @return Ticket to {@link #release(Ticket)} when done.
+	 * @throws InterruptedException
+	 */
+	synchronized Ticket acquire(long memory) throws InterruptedException {
+		Ticket ticket = new Ticket(memory);
+		queue.add(ticket);
+		try {
+			while (queue.getFirst() != ticket || !fits(ticket)) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			queue.remove(ticket);
+			notifyAll();
+			throw e;
+		}
+		queue.removeFirst();
+		running++;
+		reserved += memory;
+		ticket.waited = System.currentTimeMillis() - ticket.queued;
+		notifyAll();
+		return ticket;
+	}
+
+	synchronized void release(Ticket ticket) {
+		running--;
+		reserved -= ticket.memory;
+		notifyAll();
+	}
+
+	/**
+	 * @return Publishes waiting for admission.
+	 */
+	synchronized int getQueued() {
+		return queue.size();
+	}
+
+	private boolean fits(Ticket ticket) {
+		if (maxPublishes > 0 && running >= maxPublishes) {
+			return false;
+		}
+		return maxMemory <= 0 || running == 0 || reserved + ticket.memory <= maxMemory;
+	}
+
+	/**
+	 * Estimate memory of a publish from the size of its input.
+	 *
+	 * @param input .mht file or directory with results.
+	 * @return Estimated memory, bytes.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static long estimate(FilePath input) throws IOException, InterruptedException {
+		return input.act(new Size()) * MEMORY_FACTOR;
+	}
+
+	/**
+	 * Admission of a single publish.
+	 */
+	static final class Ticket {
+
+		private final long memory;
+		private final long queued = System.currentTimeMillis();
+		private long waited;
+
+		private Ticket(long memory) {
+			this.memory = memory;
+		}
+
+		long getMemory() {
+			return memory;
+		}
+
+		/**
+		 * @return Time spent waiting for admission, milliseconds.
+		 */
+		long getWaited() {
+			return waited;
+		}
+	}
+
+	/**
+	 * Size of a file or of all files in a directory.
+	 */
+	private static final class Size extends MasterToSlaveFileCallable<Long> {
+
+		private static final long serialVersionUID = 1L;
+
+		public Long invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+			if (f.isDirectory()) {
+				return FileUtils.sizeOfDirectory(f);
+			}
+			return f.length();
+		}
+	}
+}
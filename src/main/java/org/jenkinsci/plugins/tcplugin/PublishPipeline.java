@@ -0,0 +1,180 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Small dependency graph of publisher stages.
+ * Every stage is started as soon as all stages it depends on have completed,
+ * so independent stages run concurrently on the shared {@link WorkerPool}.
+ * Interrupting the build cancels all running stages.
+ *
+ */
+class PublishPipeline {
+
+	/**
+	 * Single step of the publisher.
+	 */
+	abstract static class Stage {
+
+		private final String name;
+		private final List<Stage> dependencies = new ArrayList<Stage>();
+
+		/**
+		 * Stage constructor.
+		 *
+		 * @param name Stage name.
+		 * @param dependencies Stages to complete before this one. Null values are ignored.
+		 */
+		Stage(String name, Stage... dependencies) {
+			this.name = name;
+			for (Stage dependency : dependencies) {
+				if (dependency != null) {
+					this.dependencies.add(dependency);
+				}
+			}
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * Stage body. Reports its own failures to the build log and sets build result.
+		 *
+		 * @return false if stage failed fatally and no further stages should start.
+		 * @throws InterruptedException
+		 */
+		abstract boolean perform() throws InterruptedException;
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final List<Stage> stages = new ArrayList<Stage>();
+
+	/**
+	 * Add stage to the pipeline. Stage dependencies should be added before.
+	 *
+	 * @param stage Stage to add.
+	 * @return The same stage, to be used as a dependency of other stages.
+	 */
+	<T extends Stage> T add(T stage) {
+		stages.add(stage);
+		return stage;
+	}
+
+	/**
+	 * Run all stages. After a fatal failure no new stages are started,
+	 * but the ones already running are allowed to finish.
+	 *
+	 * @param metrics Metrics to record stage wall time to.
+	 * @return false if any stage failed fatally.
+	 * @throws InterruptedException
+	 */
+	boolean run(final PublisherMetrics metrics) throws InterruptedException {
+
+		CompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(WorkerPool.get());
+		Map<Future<Boolean>, Stage> running = new HashMap<Future<Boolean>, Stage>();
+		Set<Stage> completed = new HashSet<Stage>();
+		List<Stage> pending = new ArrayList<Stage>(stages);
+		boolean success = true;
+
+		try {
+			while (true) {
+				if (success) {
+					for (Iterator<Stage> it = pending.iterator(); it.hasNext();) {
+						final Stage stage = it.next();
+						if (completed.containsAll(stage.dependencies)) {
+							it.remove();
+							running.put(completion.submit(new Callable<Boolean>() {
+								public Boolean call() throws Exception {
+									long start = System.currentTimeMillis();
+									try {
+										return stage.perform();
+									} finally {
+										metrics.addStageTime(stage.getName(), System.currentTimeMillis() - start);
+									}
+								}
+							}), stage);
+						}
+					}
+				}
+
+				if (running.isEmpty()) {
+					break;
+				}
+
+				Future<Boolean> done = completion.take();
+				Stage stage = running.remove(done);
+				if (getResult(done)) {
+					completed.add(stage);
+				} else {
+					success = false;
+				}
+			}
+		} finally {
+			for (Future<Boolean> future : running.keySet()) {
+				future.cancel(true);
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * Unwrap stage result, rethrowing whatever the stage has thrown.
+	 *
+	 * @param future Completed stage.
+	 * @return Stage result.
+	 * @throws InterruptedException
+	 */
+	private static boolean getResult(Future<Boolean> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InterruptedException) {
+				throw (InterruptedException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counters and timers of a single publisher run.
+ * Stages update it concurrently, {@link #toAction(String)} takes a snapshot to store in the build.
+ * 
+ */
+public class PublisherMetrics {
+
+	/**
+	 * Instance ignoring all updates. Used when nobody is interested in figures.
+	 */
+	public static final PublisherMetrics DISABLED = new PublisherMetrics(false);
+
+	private final boolean enabled;
+
+	private final ConcurrentMap<String, Long> stageTimes = new ConcurrentHashMap<String, Long>();
+	private final ConcurrentMap<String, AtomicLong> parts = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong testsParsed = new AtomicLong();
+	private final AtomicLong xmlFilesOpened = new AtomicLong();
+	private final AtomicLong peakBuffer = new AtomicLong();
+
+	public PublisherMetrics() {
+		this(true);
+	}
+
+	private PublisherMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Record stage wall time.
+	 * 
+	 * @param stage Stage name.
+	 * @param millis Time spent, milliseconds.
+	 */
+	public void addStageTime(String stage, long millis) {
+		if (enabled) {
+			stageTimes.put(stage, millis);
+		}
+	}
+
+	public void addBytesRead(long bytes) {
+		if (enabled) {
+			bytesRead.addAndGet(bytes);
+		}
+	}
+
+	public void addBytesWritten(long bytes) {
+		if (enabled) {
+			bytesWritten.addAndGet(bytes);
+		}
+	}
+
+	/**
+	 * Count decoded MHTML part.
+	 * 
+	 * @param type Part content type.
+	 */
+	public void addPart(String type) {
+		if (enabled) {
+			AtomicLong counter = parts.get(type);
+			if (counter == null) {
+				parts.putIfAbsent(type, new AtomicLong());
+				counter = parts.get(type);
+			}
+			counter.incrementAndGet();
+		}
+	}
+
+	public void addTestParsed() {
+		if (enabled) {
+			testsParsed.incrementAndGet();
+		}
+	}
+
+	public void addXmlFileOpened() {
+		if (enabled) {
+			xmlFilesOpened.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Remember buffer size if it is the largest one so far.
+	 * 
+	 * @param size Buffer size, characters.
+	 */
+	public void updatePeakBuffer(long size) {
+		if (enabled) {
+			long peak;
+			while (size > (peak = peakBuffer.get())) {
+				if (peakBuffer.compareAndSet(peak, size)) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Snapshot of the figures collected so far.
+	 * 
+	 * @param publish Number of the publish within the build, null for the first one.
+	 * @return New build action.
+	 */
+	public MetricsAction toAction(String publish) {
+
+		Map<String, Long> partCounts = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : parts.entrySet()) {
+			partCounts.put(entry.getKey(), entry.getValue().get());
+		}
+
+		return new MetricsAction(
+				new TreeMap<String, Long>(stageTimes),
+				partCounts,
+				bytesRead.get(),
+				bytesWritten.get(),
+				testsParsed.get(),
+				xmlFilesOpened.get(),
+				peakBuffer.get(),
+				publish);
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.RunAction2;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Build-level query of TestComplete results, served page by page as JSON from the {@link ResultIndex}.
+ * Query parameters:
+ * <ul>
+ * <li><i>sort</i>: <i>name</i> (default) or <i>time</i>, slowest first, e.g. for top-K slowest tests</li>
+ * <li><i>status</i>: <i>failed</i> to query only failed tests</li>
+ * <li><i>prefix</i>: prefix of suite/class/name, only with <i>sort=name</i></li>
+ * <li><i>offset</i>, <i>limit</i>: page, at most {@link #MAX_LIMIT} tests</li>
+ * </ul>
+ * Test <i>time</i> is in seconds. Not shown in the side panel.
+ *
+ */
+public class QueryAction implements RunAction2 {
+
+	private static final String ACTION_NAME = "TestComplete results query";
+	private static final String ACTION_URL = "tc-query";
+
+	/**
+	 * Maximum number of tests in a page.
+	 */
+	public static int MAX_LIMIT = Integer.getInteger(QueryAction.class.getName() + ".maxLimit", 1000);
+
+	private static final int DEFAULT_LIMIT = 100;
+
+	private transient Run<?, ?> run;
+
+	public QueryAction(Run<?, ?> run) {
+		this.run = run;
+	}
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	/**
+	 * Serve a page of tests.
+	 *
+	 * @param req Request.
+	 * @param rsp Response.
+	 * @throws IOException
+	 */
+	public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+
+		ResultIndex.Order order;
+		boolean failedOnly;
+		int offset;
+		int limit;
+		String prefix = req.getParameter("prefix");
+		try {
+			String sort = req.getParameter("sort");
+			order = sort == null || sort.length() == 0 ? ResultIndex.Order.NAME : ResultIndex.Order.valueOf(sort.toUpperCase());
+			String status = req.getParameter("status");
+			if (status != null && status.length() != 0 && !status.equals("failed")) {
+				throw new IllegalArgumentException("Unknown status " + status);
+			}
+			failedOnly = status != null && status.length() != 0;
+			offset = getInt(req, "offset", 0);
+			limit = Math.min(getInt(req, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+			if (offset < 0 || limit < 0) {
+				throw new IllegalArgumentException("Negative offset or limit");
+			}
+			if (prefix != null && prefix.length() != 0 && order != ResultIndex.Order.NAME) {
+				throw new IllegalArgumentException("Prefix is supported only with sort=name");
+			}
+		} catch (IllegalArgumentException e) {
+			rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			return;
+		}
+
+		ResultIndex index = ResultIndex.open(run.getRootDir());
+		if (index == null) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		ResultIndex.Page page;
+		try {
+			page = index.query(order, failedOnly, prefix, offset, limit);
+		} finally {
+			index.close();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"total\":").append(page.getTotal()).append(",\"offset\":").append(page.getOffset()).append(",\"tests\":[");
+		char separator = '\n';
+		for (ResultIndex.Entry test : page.getTests()) {
+			sb.append(separator).append("{\"suite\":");
+			ResultExport.quote(sb, test.getSuite());
+			sb.append(",\"classname\":");
+			ResultExport.quote(sb, test.getClassname());
+			sb.append(",\"name\":");
+			ResultExport.quote(sb, test.getName());
+			sb.append(",\"status\":\"").append(test.isFailed() ? "failed" : "passed");
+			sb.append("\",\"time\":").append(test.getTime());
+			sb.append(",\"message\":");
+			ResultExport.quote(sb, test.getMessage());
+			sb.append('}');
+			separator = ',';
+		}
+		sb.append("]}\n");
+
+		rsp.setContentType("application/json;charset=UTF-8");
+		Writer out = rsp.getCompressedWriter(req);
+		try {
+			out.write(sb.toString());
+		} finally {
+			out.close();
+		}
+	}
+
+	private static int getInt(StaplerRequest req, String name, int defaultValue) {
+		String value = req.getParameter(name);
+		return value == null || value.length() == 0 ? defaultValue : Integer.parseInt(value);
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer replacing every occurrence of a literal string on the fly.
+ * Only the characters which may still turn into a match are held back.
+ *
+ */
+public class ReplacingWriter extends FilterWriter {
+
+	private final String what;
+	private final String with;
+	private int matched = 0;
+
+	/**
+	 * ReplacingWriter constructor.
+	 *
+	 * @param out Writer to write result to.
+	 * @param what String to replace. Should not be empty.
+	 * @param with Replacement string.
+	 */
+	public ReplacingWriter(Writer out, String what, String with) {
+		super(out);
+		this.what = what;
+		this.with = with;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+
+		char ch = (char) c;
+
+		if (what.charAt(matched) == ch) {
+			matched++;
+			if (matched == what.length()) {
+				matched = 0;
+				replace();
+			}
+			return;
+		}
+
+		if (matched == 0) {
+			out.write(ch);
+			return;
+		}
+
+		//Release the first held back character and feed the rest once again
+		int held = matched;
+		matched = 0;
+		out.write(what.charAt(0));
+		for (int i = 1; i < held; i++) {
+			write(what.charAt(i));
+		}
+		write(ch);
+	}
+
+	/**
+	 * Called on every occurrence of the string, writes the replacement.
+	 * Subclasses may override it to decide on the replacement from the characters that follow.
+	 *
+	 * @throws IOException
+	 */
+	protected void replace() throws IOException {
+		out.write(with);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			write(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		for (int i = off; i < off + len; i++) {
+			write(str.charAt(i));
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		//Partial match is kept until more data comes or the writer is closed
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.write(what, 0, matched);
+		matched = 0;
+		out.close();
+	}
+}
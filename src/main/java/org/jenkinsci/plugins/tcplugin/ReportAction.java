@@ -22,10 +22,21 @@
  */
 package org.jenkinsci.plugins.tcplugin;
 
+import hudson.matrix.MatrixConfiguration;
+import hudson.matrix.MatrixProject;
 import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
- * Project-level HTML report action.
+ * Project-level HTML report action. Links the report served by {@link HtmlReportAction} of the last build.
+ * For matrix projects links reports of all active configurations from a single page.
+ * The link of a regular project is hidden when the last build has no report, e.g. after {@link ReportCompactor} dropped it.
+ * The link of a matrix project is always shown, its page tells which configurations have a report.
  * 
  * @author Sergey Myasnikov
  * 
@@ -34,11 +45,24 @@ public class ReportAction implements Action{
 
 	private static final String ACTION_NAME = "TestComplete HTML report";
 	private static final String ACTION_ICON_NAME = "graph.gif";
-	private static final String ACTIO_URL = "lastBuild/Test_Results";
+	private static final String ACTIO_URL = "lastBuild/tc-html/";
+	private static final String MATRIX_URL = "tc-report";
+
+	private final Job<?, ?> job;
+	private final MatrixProject project;
 
+	/**
+	 * @param job Project. Reports of all configurations are linked for a matrix project,
+	 * the report of the last build otherwise.
+	 */
+	public ReportAction(Job<?, ?> job) {
+		this.job = job;
+		this.project = job instanceof MatrixProject ? (MatrixProject) job : null;
+	}
 
 	public String getIconFileName() {
-		return ACTION_ICON_NAME;
+		//Checking every configuration would load the last build of each on every project page
+		return project != null || hasReport(job.getLastBuild()) ? ACTION_ICON_NAME : null;
 	}
 
 	public String getDisplayName() {
@@ -46,7 +70,50 @@ public class ReportAction implements Action{
 	}
 
 	public String getUrlName() {
-		return ACTIO_URL;
+		return project == null ? ACTIO_URL : MATRIX_URL;
+	}
+
+	public MatrixProject getProject() {
+		return project;
+	}
+
+	/**
+	 * Configurations to link reports of. Configurations already held by the project are used,
+	 * nothing is read from disk.
+	 * 
+	 * @return Active configurations. Empty for a regular project.
+	 */
+	public List<MatrixConfiguration> getConfigurations() {
+		List<MatrixConfiguration> result = new ArrayList<MatrixConfiguration>();
+		if (project != null) {
+			Collection<MatrixConfiguration> configurations = project.getActiveConfigurations();
+			if (configurations != null) {
+				result.addAll(configurations);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param configuration Matrix configuration.
+	 * @return Whether the last build of the configuration has a report.
+	 */
+	public boolean hasReport(MatrixConfiguration configuration) {
+		return hasReport(configuration.getLastBuild());
+	}
+
+	private static boolean hasReport(Run<?, ?> run) {
+		return run != null && run.getAction(HtmlReportAction.class) != null;
+	}
+
+	/**
+	 * Relative URL of the configuration report.
+	 * 
+	 * @param configuration Matrix configuration.
+	 * @return URL relative to this action page.
+	 */
+	public String getReportUrl(MatrixConfiguration configuration) {
+		return "../" + configuration.getShortUrl() + ACTIO_URL;
 	}
 
 }
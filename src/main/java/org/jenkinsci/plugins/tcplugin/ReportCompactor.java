@@ -0,0 +1,273 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import htmlpublisher.HtmlPublisherTarget;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Action;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.model.Jenkins;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Periodically compacts TestComplete data of old builds according to the retention policy
+ * of {@link TestCompletePublisher.DescriptorImpl}:
+ * <ul>
+ * <li>after some days screenshots of successful builds are dropped,</li>
+ * <li>after more days only the summary, message index and JUnit results are kept:
+ * archived HTML report with its links, .mht artifacts archived by the publisher and all screenshots are dropped.</li>
+ * </ul>
+ * Build directories are scanned without loading builds. A build is loaded only when it has to be compacted,
+ * running builds are skipped. Progress is stored in a marker file, so every build is compacted once per level.
+ *
+ */
+@Extension
+public class ReportCompactor extends AsyncPeriodicWork implements Constants {
+
+	/**
+	 * Pause after every compacted build, milliseconds. Keeps master disk I/O low.
+	 */
+	public static long THROTTLE = Long.getLong(ReportCompactor.class.getName() + ".throttle", 500);
+
+	/**
+	 * Maximum number of builds compacted in one run. The rest is done next time.
+	 */
+	public static int MAX_BUILDS = Integer.getInteger(ReportCompactor.class.getName() + ".maxBuilds", 200);
+
+	private static final String MARKER = "tc-compacted";
+	private static final String ARTIFACTS = "tc-artifacts";
+	private static final String MHT = ".mht";
+
+	static final int NONE = 0;
+	static final int SCREENSHOTS = 1;
+	static final int REPORT = 2;
+
+	public ReportCompactor() {
+		super("TestComplete report compaction");
+	}
+
+	@Override
+	public long getRecurrencePeriod() {
+		return HOUR;
+	}
+
+	@Override
+	protected void execute(TaskListener listener) throws IOException, InterruptedException {
+
+		TestCompletePublisher.DescriptorImpl descriptor =
+				Jenkins.getInstance().getDescriptorByType(TestCompletePublisher.DescriptorImpl.class);
+		int screenshotDays = descriptor.getScreenshotRetentionDays();
+		int reportDays = descriptor.getReportRetentionDays();
+		if (screenshotDays <= 0 && reportDays <= 0) {
+			return;
+		}
+
+		int budget = MAX_BUILDS;
+		long now = System.currentTimeMillis();
+
+		for (Job<?, ?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+			for (File dir : getBuildDirs(job)) {
+				if (budget <= 0) {
+					listener.getLogger().println("Build limit reached, continuing next time");
+					return;
+				}
+
+				//Summary is written by every publish, so it marks builds with TestComplete data and their age
+				File summary = new File(dir, SUMMARY_XML);
+				if (!summary.isFile()) {
+					continue;
+				}
+				long age = TimeUnit.MILLISECONDS.toDays(now - summary.lastModified());
+
+				int level = NONE;
+				if (reportDays > 0 && age >= reportDays) {
+					level = REPORT;
+				} else if (screenshotDays > 0 && age >= screenshotDays) {
+					level = SCREENSHOTS;
+				}
+				if (level <= getLevel(dir)) {
+					continue;
+				}
+
+				Run<?, ?> run = job.getBuildByNumber(Integer.parseInt(dir.getName()));
+				if (run == null || run.isBuilding()) {
+					continue;
+				}
+
+				compact(run, level, listener);
+				setLevel(dir, level);
+				budget--;
+				Thread.sleep(THROTTLE);
+			}
+		}
+	}
+
+	/**
+	 * Compact a single build.
+	 *
+	 * @param run Completed build.
+	 * @param level Target level.
+	 * @param listener Log of the periodic task.
+	 * @throws IOException
+	 */
+	private void compact(Run<?, ?> run, int level, TaskListener listener) throws IOException {
+
+		boolean changed = false;
+		Result result = run.getResult();
+
+		//Screenshots of failed builds are kept until the report is dropped
+		if (level >= REPORT || result != null && result.isBetterOrEqualTo(Result.SUCCESS)) {
+			List<ScreenshotsAction> screenshots = run.getActions(ScreenshotsAction.class);
+			for (ScreenshotsAction action : screenshots) {
+				ScreenshotStore.get(run.getParent()).release(action.getScreenshots().values());
+			}
+			changed |= run.getActions().removeAll(screenshots);
+		}
+
+		if (level >= REPORT) {
+			//Only reports of this publisher, others of the job are kept
+			List<HtmlReportAction> published = run.getActions(HtmlReportAction.class);
+			for (HtmlReportAction report : published) {
+				Util.deleteRecursive(report.getReportDir());
+			}
+			for (File mht : getMhtFiles(run.getRootDir(), run.getArtifactsDir())) {
+				if (!mht.delete()) {
+					listener.getLogger().println("Failed to delete " + mht);
+				}
+			}
+			//Links of HTML Publisher to the dropped reports
+			List<Action> links = new ArrayList<Action>();
+			for (HtmlPublisherTarget.HTMLBuildAction link : run.getActions(HtmlPublisherTarget.HTMLBuildAction.class)) {
+				for (HtmlReportAction report : published) {
+					if (report.getReportDir().getName().equals(link.getUrlName())) {
+						links.add(link);
+					}
+				}
+			}
+			changed |= run.getActions().removeAll(links);
+			changed |= run.getActions().removeAll(published);
+		}
+
+		if (changed) {
+			run.save();
+		}
+		listener.getLogger().println("Compacted " + run.getFullDisplayName() + " to level " + level);
+	}
+
+	/**
+	 * Numbered build directories of the job, oldest first.
+	 */
+	private static List<File> getBuildDirs(Job<?, ?> job) {
+		List<File> dirs = new ArrayList<File>();
+		File[] files = job.getBuildDir().listFiles();
+		if (files == null) {
+			return dirs;
+		}
+		List<Integer> numbers = new ArrayList<Integer>();
+		for (File file : files) {
+			if (file.isDirectory() && file.getName().matches("\\d+")) {
+				numbers.add(Integer.valueOf(file.getName()));
+			}
+		}
+		Collections.sort(numbers);
+		for (Integer number : numbers) {
+			dirs.add(new File(job.getBuildDir(), String.valueOf(number)));
+		}
+		return dirs;
+	}
+
+	/**
+	 * Record an .mht file archived by the publisher, so that only such files are dropped with the report.
+	 *
+	 * @param buildDir Build directory.
+	 * @param path Artifact path relative to the artifacts directory.
+	 * @throws IOException
+	 */
+	static synchronized void addArtifact(File buildDir, String path) throws IOException {
+		OutputStream out = new FileOutputStream(new File(buildDir, ARTIFACTS), true);
+		try {
+			out.write((path.replace('\\', '/') + "\n").getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * .mht files archived by the publisher, see {@link #addArtifact(File, String)}.
+	 */
+	static List<File> getMhtFiles(File buildDir, File artifactsDir) throws IOException {
+		List<File> result = new ArrayList<File>();
+		File list = new File(buildDir, ARTIFACTS);
+		if (!list.isFile()) {
+			return result;
+		}
+		for (String line : FileUtils.readLines(list, "UTF-8")) {
+			String path = line.trim();
+			if (path.length() == 0 || path.contains("..") || !path.toLowerCase().endsWith(MHT)) {
+				continue;
+			}
+			File file = new File(artifactsDir, path);
+			if (file.isFile() && !result.contains(file)) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	private static int getLevel(File buildDir) throws IOException {
+		File marker = new File(buildDir, MARKER);
+		if (!marker.isFile()) {
+			return NONE;
+		}
+		try {
+			return Integer.parseInt(FileUtils.readFileToString(marker).trim());
+		} catch (NumberFormatException e) {
+			return NONE;
+		}
+	}
+
+	private static void setLevel(File buildDir, int level) throws IOException {
+		OutputStream out = new FileOutputStream(new File(buildDir, MARKER));
+		try {
+			out.write(String.valueOf(level).getBytes("US-ASCII"));
+		} finally {
+			out.close();
+		}
+	}
+}
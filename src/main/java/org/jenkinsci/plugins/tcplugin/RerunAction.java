@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jenkins.model.RunAction2;
+
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+
+/**
+ * Marks a build which reruns only the failed tests of a previous build.
+ * Publisher tags results of such a build as retries.
+ *
+ */
+public class RerunAction implements RunAction2 {
+
+	private static final String ACTION_NAME = "TestComplete retries";
+	private static final String ACTION_ICON_NAME = "refresh.png";
+	private static final String ACTION_URL = "tc-rerun";
+
+	private final int previous;
+	private final List<String> tests;
+	private Integer passed;
+	private Integer failed;
+
+	private transient Run<?, ?> run;
+
+	/**
+	 * @param run Build running the retries.
+	 * @param previous Number of the build whose failed tests are rerun.
+	 * @param tests Rerun tests, <i>suite / name</i>.
+	 */
+	public RerunAction(Run<?, ?> run, int previous, List<String> tests) {
+		this.run = run;
+		this.previous = previous;
+		this.tests = new ArrayList<String>(tests);
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	/**
+	 * @return Number of the build whose failed tests are rerun.
+	 */
+	public int getPrevious() {
+		return previous;
+	}
+
+	public List<String> getTests() {
+		return Collections.unmodifiableList(tests);
+	}
+
+	/**
+	 * @return Number of passed retries. Null until results are published.
+	 */
+	public Integer getPassed() {
+		return passed;
+	}
+
+	/**
+	 * @return Number of retries still failing. Null until results are published.
+	 */
+	public Integer getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Count the retries among published results, other tests are merged from the previous build.
+	 *
+	 * @param suites Published suites.
+	 */
+	synchronized void count(List<TestSuiteResult> suites) {
+		int p = passed == null ? 0 : passed;
+		int f = failed == null ? 0 : failed;
+		for (TestSuiteResult suite : suites) {
+			for (TestResult test : suite.getTestResults()) {
+				if (tests.contains(suite.getName() + " / " + test.getName())) {
+					if (test.isFailed()) {
+						f++;
+					} else {
+						p++;
+					}
+				}
+			}
+		}
+		passed = p;
+		failed = f;
+	}
+
+	/**
+	 * @return System output every published test is tagged with.
+	 */
+	public String getNote() {
+		return "Retry of a failed test of build #" + previous;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+}
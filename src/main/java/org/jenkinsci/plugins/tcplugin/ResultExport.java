@@ -0,0 +1,352 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jenkinsci.plugins.tcplugin.results.SuiteNode;
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+
+/**
+ * Compact per-build record of parsed tests, streamed out as newline-delimited JSON.
+ * Stored beside the build in {@link Constants#RESULT_EXPORT} as gzipped tab-separated text, one test per line.
+ * Every publish appends its own gzip member, so earlier publishes of the build are not rewritten.
+ * Test time is in seconds.
+ *
+ */
+public class ResultExport implements Constants {
+
+	public static final String CONTENT_TYPE = "application/x-ndjson;charset=UTF-8";
+
+	static final String BUILD = "build";
+	static final String SUITE = "suite";
+	static final String NAME = "name";
+	static final String STATUS = "status";
+	static final String TIME = "time";
+	static final String MESSAGE = "message";
+	static final String PATH = "path";
+
+	private static final String[] FIELDS = {SUITE, NAME, STATUS, TIME, MESSAGE, PATH};
+
+	private static final String PASSED = "passed";
+	private static final String FAILED = "failed";
+
+	private final Set<String> fields;
+	private final String status;
+
+	/**
+	 * Query of exported tests.
+	 *
+	 * @param fields Comma separated fields to write, see {@link #FIELDS}. Null or empty for all.
+	 * @param status <i>failed</i> or <i>passed</i> to write only such tests. Null or empty for all.
+	 * @throws IllegalArgumentException Unknown field or status.
+	 */
+	public ResultExport(String fields, String status) {
+		this.fields = new LinkedHashSet<String>();
+		if (fields == null || fields.trim().length() == 0) {
+			for (String field : FIELDS) {
+				this.fields.add(field);
+			}
+		} else {
+			for (String field : fields.split(",")) {
+				field = field.trim();
+				if (!isField(field)) {
+					throw new IllegalArgumentException("Unknown field " + field);
+				}
+				this.fields.add(field);
+			}
+		}
+		if (status != null && status.length() != 0 && !status.equals(FAILED) && !status.equals(PASSED)) {
+			throw new IllegalArgumentException("Unknown status " + status);
+		}
+		this.status = status == null || status.length() == 0 ? null : status;
+	}
+
+	private static boolean isField(String field) {
+		for (String f : FIELDS) {
+			if (f.equals(field)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Write matching tests of the build as JSON lines.
+	 *
+	 * @param buildDir Build directory.
+	 * @param number Build number written with every test. Null to omit it.
+	 * @param out Output.
+	 * @return Number of written tests. 0 if the build has no export.
+	 * @throws IOException
+	 */
+	public int write(File buildDir, Integer number, Writer out) throws IOException {
+		File file = new File(buildDir, RESULT_EXPORT);
+		if (!file.isFile()) {
+			return 0;
+		}
+		int count = 0;
+		StringBuilder sb = new StringBuilder();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] record = line.split("\t", -1);
+				if (record.length < 5 || status != null && !status.equals(record[0])) {
+					continue;
+				}
+				sb.setLength(0);
+				char separator = '{';
+				if (number != null) {
+					sb.append(separator).append('"').append(BUILD).append("\":").append(number);
+					separator = ',';
+				}
+				for (String field : fields) {
+					sb.append(separator).append('"').append(field).append("\":");
+					separator = ',';
+					if (field.equals(STATUS)) {
+						quote(sb, record[0]);
+					} else if (field.equals(TIME)) {
+						sb.append(record[1]);
+					} else if (field.equals(SUITE)) {
+						quote(sb, unescape(record[2]));
+					} else if (field.equals(NAME)) {
+						quote(sb, unescape(record[3]));
+					} else if (field.equals(MESSAGE)) {
+						quote(sb, unescape(record[4]));
+					} else {
+						sb.append('[');
+						for (int i = 5; i < record.length; i++) {
+							if (i > 5) {
+								sb.append(',');
+							}
+							quote(sb, unescape(record[i]));
+						}
+						sb.append(']');
+					}
+				}
+				sb.append("}\n");
+				out.write(sb.toString());
+				count++;
+			}
+		} finally {
+			in.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Append parsed suites to the export of the build.
+	 *
+	 * @param run Build.
+	 * @param suites Parsed suites.
+	 * @throws IOException
+	 */
+	public static void publish(Run<?, ?> run, List<TestSuiteResult> suites) throws IOException {
+		synchronized (run) {
+			publish(run.getRootDir(), suites);
+		}
+	}
+
+	static void publish(File buildDir, List<TestSuiteResult> suites) throws IOException {
+		File file = new File(buildDir, RESULT_EXPORT);
+		Writer out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file, true)), "UTF-8"));
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (TestSuiteResult suite : suites) {
+				for (TestResult result : suite.getTestResults()) {
+					sb.setLength(0);
+					sb.append(result.isFailed() ? FAILED : PASSED).append('\t').append(result.getTime());
+					sb.append('\t').append(escape(suite.getName()));
+					sb.append('\t').append(escape(result.getName()));
+					sb.append('\t').append(escape(result.getFailureDetails()));
+					for (String item : result.getPath()) {
+						sb.append('\t').append(escape(item));
+					}
+					sb.append('\n');
+					out.write(sb.toString());
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read the tests of the build back, e.g. to merge retried tests over them.
+	 * Failure types are not exported, so failed tests get the default one.
+	 *
+	 * @param buildDir Build directory.
+	 * @return Tests of all publishes of the build under their log items, aggregated. Null if the build has no export.
+	 * @throws IOException
+	 */
+	static SuiteNode read(File buildDir) throws IOException {
+		File file = new File(buildDir, RESULT_EXPORT);
+		if (!file.isFile()) {
+			return null;
+		}
+		SuiteNode root = new SuiteNode();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8"));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] record = line.split("\t", -1);
+				if (record.length < 5) {
+					continue;
+				}
+				SuiteNode node = root;
+				for (int i = 5; i < record.length; i++) {
+					node = node.child(unescape(record[i]));
+				}
+				String name = unescape(record[3]);
+				long time = Long.parseLong(record[1]);
+				TestResult test = record[0].equals(FAILED)
+						? new TestResult(node.getClassName(), name, time, ResultParser.DEFAULT_FAILURE_TYPE, unescape(record[4]))
+						: new TestResult(node.getClassName(), name, time);
+				test.setPath(node.getPath());
+				node.addTest(test);
+			}
+		} finally {
+			in.close();
+		}
+		root.aggregate();
+		return root;
+	}
+
+	/**
+	 * Numbers of the builds after the given one that have an export, taken from build directories.
+	 *
+	 * @param buildDir Builds directory of the project.
+	 * @param numbers Build numbers, latest first.
+	 * @param since Build number to start after.
+	 * @param until Build number to stop before, e.g. the oldest build still running.
+	 * @return Build numbers, oldest first.
+	 */
+	static List<Integer> since(File buildDir, List<Integer> numbers, int since, int until) {
+		List<Integer> result = new ArrayList<Integer>();
+		for (Integer number : numbers) {
+			if (number <= since) {
+				break;
+			}
+			if (number >= until) {
+				continue;
+			}
+			if (new File(new File(buildDir, String.valueOf(number)), RESULT_EXPORT).isFile()) {
+				result.add(0, number);
+			}
+		}
+		return result;
+	}
+
+	private static String escape(String value) {
+		if (value == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String unescape(String value) {
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '\\' && i + 1 < value.length()) {
+				c = value.charAt(++i);
+				sb.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	static void quote(StringBuilder sb, String value) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		sb.append('"');
+	}
+}
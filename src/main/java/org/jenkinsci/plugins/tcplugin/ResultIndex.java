@@ -0,0 +1,431 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+
+/**
+ * Sorted, random access index of the tests of a build, queried page by page without loading it.
+ * Stored beside the build in {@link Constants#RESULT_INDEX}:
+ * <pre>
+ * header       magic, version, test count, failed count
+ * offsets      record offset of every test, ordered by key (suite/class/name)
+ * by time      key positions of all tests, slowest first
+ * failed       key positions of failed tests, ordered by key
+ * failed time  key positions of failed tests, slowest first
+ * records      suite, class, name, time, status, message of every test
+ * </pre>
+ *
+ */
+public class ResultIndex implements Constants {
+
+	/**
+	 * Maximum length of a stored failure message.
+	 */
+	public static int MAX_MESSAGE = Integer.getInteger(ResultIndex.class.getName() + ".maxMessage", 4096);
+
+	private static final int MAGIC = 0x54435249;
+	private static final int VERSION = 1;
+	private static final int HEADER = 16;
+
+	private static final Comparator<Entry> BY_KEY = new Comparator<Entry>() {
+		public int compare(Entry a, Entry b) {
+			return a.getKey().compareTo(b.getKey());
+		}
+	};
+
+	/**
+	 * Ordering of a query.
+	 */
+	public enum Order {
+		/** By suite, class and test name. */
+		NAME,
+		/** Slowest first. */
+		TIME
+	}
+
+	private final RandomAccessFile file;
+	private final int count;
+	private final int failedCount;
+
+	private ResultIndex(RandomAccessFile file) throws IOException {
+		this.file = file;
+		if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+			throw new IOException("Unsupported result index");
+		}
+		this.count = file.readInt();
+		this.failedCount = file.readInt();
+	}
+
+	/**
+	 * Open the index of the build. Must be closed.
+	 *
+	 * @param buildDir Build directory.
+	 * @return Index or null if the build has none.
+	 * @throws IOException
+	 */
+	public static ResultIndex open(File buildDir) throws IOException {
+		File f = new File(buildDir, RESULT_INDEX);
+		if (!f.isFile()) {
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			return new ResultIndex(raf);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * Query a page of tests. Only the tests of the page are read.
+	 *
+	 * @param order Ordering.
+	 * @param failedOnly Whether only failed tests are queried.
+	 * @param prefix Prefix of test keys (suite/class/name), null for all. Only for {@link Order#NAME}.
+	 * @param offset Number of matching tests to skip.
+	 * @param limit Maximum number of tests to return.
+	 * @return Page.
+	 * @throws IOException
+	 */
+	public Page query(Order order, boolean failedOnly, String prefix, int offset, int limit) throws IOException {
+
+		//Positions of matching tests are a range of one of the orderings
+		long list;
+		int from = 0;
+		int to;
+		if (order == Order.TIME) {
+			list = failedOnly ? getFailedByTime() : getByTime();
+			to = failedOnly ? failedCount : count;
+		} else {
+			list = failedOnly ? getFailed() : -1;
+			to = failedOnly ? failedCount : count;
+			if (prefix != null && prefix.length() != 0) {
+				from = search(list, 0, to, prefix, false);
+				to = search(list, from, to, prefix, true);
+			}
+		}
+
+		Page page = new Page(to - from, offset);
+		for (int i = from + offset; i < to && page.tests.size() < limit; i++) {
+			page.tests.add(read(position(list, i)));
+		}
+		return page;
+	}
+
+	/**
+	 * First position in a range whose key is not less than the prefix,
+	 * or, if past, first one whose key is past all keys with the prefix.
+	 */
+	private int search(long list, int from, int to, String prefix, boolean past) throws IOException {
+		while (from < to) {
+			int mid = (from + to) >>> 1;
+			String key = read(position(list, mid)).getKey();
+			boolean before = past ? key.compareTo(prefix) < 0 || key.startsWith(prefix) : key.compareTo(prefix) < 0;
+			if (before) {
+				from = mid + 1;
+			} else {
+				to = mid;
+			}
+		}
+		return from;
+	}
+
+	private long getByTime() {
+		return HEADER + 8L * count;
+	}
+
+	private long getFailed() {
+		return getByTime() + 4L * count;
+	}
+
+	private long getFailedByTime() {
+		return getFailed() + 4L * failedCount;
+	}
+
+	/**
+	 * @param list Start of a list of positions, -1 for the key order itself.
+	 */
+	private int position(long list, int i) throws IOException {
+		if (list < 0) {
+			return i;
+		}
+		file.seek(list + 4L * i);
+		return file.readInt();
+	}
+
+	private Entry read(int position) throws IOException {
+		file.seek(HEADER + 8L * position);
+		file.seek(file.readLong());
+		String suite = readString(file);
+		String classname = readString(file);
+		String name = readString(file);
+		long time = file.readLong();
+		boolean failed = file.readBoolean();
+		String message = readString(file);
+		return new Entry(suite, classname, name, time, failed, message);
+	}
+
+	private static String readString(RandomAccessFile in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = (value == null ? "" : value).getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Write tests to an index file.
+	 *
+	 * @param entries Tests, in any order. Sorted in place.
+	 * @param f File to write.
+	 * @throws IOException
+	 */
+	static void save(final List<Entry> entries, File f) throws IOException {
+
+		Collections.sort(entries, BY_KEY);
+		List<Integer> byTime = new ArrayList<Integer>();
+		List<Integer> failed = new ArrayList<Integer>();
+		for (int i = 0; i < entries.size(); i++) {
+			byTime.add(i);
+			if (entries.get(i).failed) {
+				failed.add(i);
+			}
+		}
+		Comparator<Integer> slowestFirst = new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				long x = entries.get(a).time;
+				long y = entries.get(b).time;
+				return x < y ? 1 : x == y ? a.compareTo(b) : -1;
+			}
+		};
+		Collections.sort(byTime, slowestFirst);
+		List<Integer> failedByTime = new ArrayList<Integer>(failed);
+		Collections.sort(failedByTime, slowestFirst);
+
+		//Records start right after the lists, their offsets are known once they are serialized
+		byte[][] records = new byte[entries.size()][];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = entries.get(i).toBytes();
+		}
+		long offset = HEADER + 8L * entries.size() + 4L * entries.size() + 8L * failed.size();
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			out.writeInt(failed.size());
+			for (byte[] record : records) {
+				out.writeLong(offset);
+				offset += record.length;
+			}
+			for (Integer i : byTime) {
+				out.writeInt(i);
+			}
+			for (Integer i : failed) {
+				out.writeInt(i);
+			}
+			for (Integer i : failedByTime) {
+				out.writeInt(i);
+			}
+			for (byte[] record : records) {
+				out.write(record);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Add parsed suites to the index of the build.
+	 * Index of an earlier publish in the same build is rewritten with them.
+	 *
+	 * @param run Build.
+	 * @param suites Parsed suites.
+	 * @throws IOException
+	 */
+	public static void publish(Run<?, ?> run, List<TestSuiteResult> suites) throws IOException {
+		synchronized (run) {
+			List<Entry> entries = new ArrayList<Entry>();
+			ResultIndex existing = open(run.getRootDir());
+			if (existing != null) {
+				try {
+					for (int i = 0; i < existing.count; i++) {
+						entries.add(existing.read(i));
+					}
+				} finally {
+					existing.close();
+				}
+			}
+			for (TestSuiteResult suite : suites) {
+				for (TestResult result : suite.getTestResults()) {
+					String message = result.getFailureDetails();
+					if (message != null && message.length() > MAX_MESSAGE) {
+						message = message.substring(0, MAX_MESSAGE);
+					}
+					entries.add(new Entry(suite.getName(), result.getClassname(), result.getName(),
+							result.getTime(), result.isFailed(), message));
+				}
+			}
+
+			File file = new File(run.getRootDir(), RESULT_INDEX);
+			File tmp = new File(run.getRootDir(), RESULT_INDEX + ".tmp");
+			save(entries, tmp);
+			if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("Failed to save " + file);
+			}
+		}
+	}
+
+	/**
+	 * Page of query results.
+	 */
+	public static final class Page {
+
+		private final int total;
+		private final int offset;
+		private final List<Entry> tests = new ArrayList<Entry>();
+
+		Page(int total, int offset) {
+			this.total = total;
+			this.offset = offset;
+		}
+
+		/**
+		 * @return Number of all matching tests.
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+
+		public List<Entry> getTests() {
+			return Collections.unmodifiableList(tests);
+		}
+	}
+
+	/**
+	 * Single test of the index.
+	 */
+	public static final class Entry {
+
+		private final String suite;
+		private final String classname;
+		private final String name;
+		private final long time;
+		private final boolean failed;
+		private final String message;
+
+		Entry(String suite, String classname, String name, long time, boolean failed, String message) {
+			this.suite = suite;
+			this.classname = classname;
+			this.name = name;
+			this.time = time;
+			this.failed = failed;
+			this.message = message == null ? "" : message;
+		}
+
+		/**
+		 * @return Suite, class and test name, slash separated.
+		 */
+		public String getKey() {
+			return suite + "/" + classname + "/" + name;
+		}
+
+		public String getSuite() {
+			return suite;
+		}
+
+		public String getClassname() {
+			return classname;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Test time, seconds.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public boolean isFailed() {
+			return failed;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		private byte[] toBytes() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeString(out, suite);
+			writeString(out, classname);
+			writeString(out, name);
+			out.writeLong(time);
+			out.writeBoolean(failed);
+			writeString(out, message);
+			out.close();
+			return bytes.toByteArray();
+		}
+	}
+}
@@ -25,8 +25,16 @@ package org.jenkinsci.plugins.tcplugin;
 import hudson.FilePath;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -36,6 +44,10 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
 
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.jenkinsci.plugins.tcplugin.results.SuiteLayout;
+import org.jenkinsci.plugins.tcplugin.results.SuiteNode;
 import org.jenkinsci.plugins.tcplugin.results.TestResult;
 import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
 import org.w3c.dom.Document;
@@ -52,13 +64,13 @@ import org.xml.sax.SAXException;
  */
 public class ResultParser implements Constants {
 
+	private static final Logger LOGGER = Logger.getLogger(ResultParser.class.getName());
+
 	private static final String TEST_RESULT_PROVIDER_XPATH = ".//Provider[contains(@href, '_TestLog.xml')]/../../Provider";
 	private static final String RUN_TIME_XPATH = ".//RunTime";
 	private static final String MESSAGE_XPATH = ".//Message";
 	
-	private static final String DEFAULT_FAILURE_TYPE = "Failure";
-	
-	private static final int MAX_CLASS_DEPTH = 10;
+	static final String DEFAULT_FAILURE_TYPE = "Failure";
 
 
 	/**
@@ -74,21 +86,11 @@ public class ResultParser implements Constants {
 			String[] aTime = sTime.split(":");
 			lTime = Long.parseLong(aTime[0])*3600 + Long.parseLong(aTime[1])*60 + Long.parseLong(aTime[2]);
 		} catch (Exception e) {
-			e.printStackTrace();
+			LOGGER.log(Level.WARNING, "Failed to parse run time " + sTime, e);
 		}	
 		return lTime;
 	}
 
-	/**
-	 * Remove spaces from classname string.
-	 * 
-	 * @param className classname string.
-	 * @return Sanitized classname.
-	 */
-	private static String sanitizeClassName(String className) {
-		return className.replace(" ", "_").trim();
-	}
-
 	/**
 	 * Get the name of log .xml file from href attribute value.
 	 * 
@@ -103,18 +105,25 @@ public class ResultParser implements Constants {
 	 * Returns xml-document by FilePath.
 	 * 
 	 * @param path FilePath of the .xml file.
+	 * @param metrics Metrics to count opened files and read bytes.
 	 * @return
 	 * @throws ParserConfigurationException
 	 * @throws SAXException
 	 * @throws IOException
 	 */
-	private static Document getDocument(FilePath path) 
+	private static Document getDocument(FilePath path, PublisherMetrics metrics) 
 			throws ParserConfigurationException, SAXException, IOException {
 		
 		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 		DocumentBuilder builder = factory.newDocumentBuilder();
-		Document doc = builder.parse(path.read());	
-		return doc;
+		CountingInputStream in = new CountingInputStream(path.read());
+		try {
+			metrics.addXmlFileOpened();
+			return builder.parse(in);
+		} finally {
+			in.close();
+			metrics.addBytesRead(in.getByteCount());
+		}
 	}
 
 	/**
@@ -125,20 +134,53 @@ public class ResultParser implements Constants {
 	 * @return Node list object. May return null.
 	 */
 	public static NodeList getNodesByXPath(FilePath xmlPath, String xPath) {
+		return getNodesByXPath(xmlPath, xPath, PublisherMetrics.DISABLED);
+	}
 
-		NodeList nList = null;
+	private static NodeList getNodesByXPath(FilePath xmlPath, String xPath, PublisherMetrics metrics) {
+		return getNodesByXPath(getDocumentOrNull(xmlPath, metrics), xPath);
+	}
 
+	/**
+	 * Parse .xml file, logging failures.
+	 * 
+	 * @param xmlPath .xml file location.
+	 * @param metrics Publisher metrics.
+	 * @return Normalized document or null if it cannot be parsed.
+	 */
+	private static Document getDocumentOrNull(FilePath xmlPath, PublisherMetrics metrics) {
 		try {
-			Document doc = getDocument(xmlPath);
+			Document doc = getDocument(xmlPath, metrics);
 			doc.normalize();
+			return doc;
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "Failed to parse " + xmlPath, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Get NodeList object from already parsed document by xPath
+	 * 
+	 * @param doc Parsed document. May be null.
+	 * @param xPath xPath value.
+	 * @return Node list object. May return null.
+	 */
+	private static NodeList getNodesByXPath(Document doc, String xPath) {
+
+		NodeList nList = null;
+		if (doc == null) {
+			return nList;
+		}
 
+		try {
 			XPathFactory xPathfactory = XPathFactory.newInstance();
 			XPath xpath = xPathfactory.newXPath();
 			XPathExpression expr = xpath.compile(xPath);
 			nList = (NodeList) expr.evaluate(doc, XPathConstants.NODESET);
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			LOGGER.log(Level.WARNING, "Failed to evaluate " + xPath, e);
 		}
 		return nList;		
 	}
@@ -150,10 +192,14 @@ public class ResultParser implements Constants {
 	 * @return Name attribute value of the root element.
 	 */
 	public static String getRootLogDataName(FilePath xmlPath) {
+		return getRootLogDataName(xmlPath, PublisherMetrics.DISABLED);
+	}
+
+	private static String getRootLogDataName(FilePath xmlPath, PublisherMetrics metrics) {
 
 		String result = "";
 		try {
-			Document doc = getDocument(xmlPath);
+			Document doc = getDocument(xmlPath, metrics);
 			doc.normalize();
 			Node root = doc.getFirstChild();
 
@@ -162,149 +208,238 @@ public class ResultParser implements Constants {
 			}
 
 		} catch (Exception e) {
-			e.printStackTrace();
+			LOGGER.log(Level.WARNING, "Failed to read root log item of " + xmlPath, e);
 		}
 		return result;		
 	}
 
 	/**
-	 * Method generates test result "class name" by adding parent names separated with "." symbol.
-	 * @param node Test result Node.
-	 * @return TestResult "class name".
+	 * Get tree node of a log item. Every log item is resolved once, its parents are shared by all tests below.
+	 * 
+	 * @param item Log item element.
+	 * @param root Root of the tree, stands for the top log item.
+	 * @param nodes Already resolved log items.
+	 * @return Tree node of the item.
 	 */
-	private static String getClassName(Node node) {
+	private static SuiteNode getSuiteNode(Node item, SuiteNode root, Map<Node, SuiteNode> nodes) {
 
-		String result = "";
-		String previous = "";
-		Node parent = node;
-
-		for (int i = 0; i < MAX_CLASS_DEPTH; i++) {		
-			try {
-				parent = parent.getParentNode();
-				if (parent.getNodeType() == Node.ELEMENT_NODE) {
-					if (result.length() == 0) {
-						result = previous + result;
-					} else {
-						result = previous + "." + result;
-					}
-					previous = ((Element) parent).getAttribute("name");
-				}	
-			} catch (Exception e) {
-				break;
-			}	
+		SuiteNode result = nodes.get(item);
+		if (result != null) {
+			return result;
 		}
-		return sanitizeClassName(result);
+		Node parent = item.getParentNode();
+		if (parent == null || parent.getNodeType() != Node.ELEMENT_NODE) {
+			//Top log item is not a part of class name
+			result = root;
+		} else {
+			result = getSuiteNode(parent, root, nodes).child(((Element) item).getAttribute("name"));
+		}
+		nodes.put(item, result);
+		return result;
 	}
 
 	/**
-	 * Convert Node with test result data to TestResult object.
+	 * Convert Node with test result data to a task building TestResult object.
+	 * Node attributes are read right away, as DOM is not thread-safe; the test log is parsed by the task.
 	 * 
 	 * @param node Test result Node
+	 * @param suite Tree node of the log item the test belongs to.
 	 * @param basePath Location of root.xml and other result .xml files.
-	 * @return TestResult object.
+	 * @param metrics Publisher metrics.
+	 * @return Task returning TestResult object, or null if the node has no test item.
 	 */
-	private static TestResult getTestResultFromNode(Node node, FilePath basePath) {
+	private static Callable<TestResult> getTestResultFromNode(Node node, SuiteNode suite, final FilePath basePath,
+			final PublisherMetrics metrics) {
 
-		TestResult result = null;
-
-		String testName = "";
-		String testClass = "";
-		NodeList testTimeNodes = null;
-		String testTime = "";
-		long longTestTime = 0;
-		String testStatus = "";
-		boolean isSuccess = false;
-		String projectLogName = getLogFileNameFromHref(((Element) node).getAttribute("href"));
-		String testFailureMessage = "";
-		NodeList testMessageNodes = null;
+		final String projectLogName = getLogFileNameFromHref(((Element) node).getAttribute("href"));
 
 		Node parent = node.getParentNode();
-		if (parent.getNodeType() == Node.ELEMENT_NODE) {		
-			Element parentElement = (Element) parent;
-
-			testName = parentElement.getAttribute("name");		
-			testStatus = parentElement.getAttribute("status");
-			isSuccess = testStatus.equalsIgnoreCase("0") || testStatus.equalsIgnoreCase("1");
-
-			testTimeNodes = getNodesByXPath(basePath.child(projectLogName), RUN_TIME_XPATH);
-			testTime = testTimeNodes.item(0).getTextContent();
-			longTestTime = getLongTime(testTime);
-
-			testClass = getClassName(parent);
-
-			if (isSuccess) {
-				result = new TestResult(testClass, testName, longTestTime);
-			} else {
-				try {
-					testMessageNodes = getNodesByXPath(basePath.child(projectLogName), MESSAGE_XPATH);
-					testFailureMessage = testMessageNodes.item(0).getTextContent();
-				} catch (Exception e) {
-					// Ignore: may not have a message.
-				}				
-				result = new TestResult(testClass, testName, longTestTime, DEFAULT_FAILURE_TYPE, testFailureMessage);
-			}
+		if (parent.getNodeType() != Node.ELEMENT_NODE) {
+			return new Callable<TestResult>() {
+				public TestResult call() {
+					return null;
+				}
+			};
 		}
-		return result;			
+		Element parentElement = (Element) parent;
+
+		final String testName = parentElement.getAttribute("name");		
+		String testStatus = parentElement.getAttribute("status");
+		final boolean isSuccess = testStatus.equalsIgnoreCase("0") || testStatus.equalsIgnoreCase("1");
+		final String testClass = suite.getClassName();
+		final List<String> path = suite.getPath();
+
+		return new Callable<TestResult>() {
+			public TestResult call() {
+
+				//Test log is parsed once for both run time and messages
+				Document log = getDocumentOrNull(basePath.child(projectLogName), metrics);
+				NodeList testTimeNodes = getNodesByXPath(log, RUN_TIME_XPATH);
+				String testTime = testTimeNodes.item(0).getTextContent();
+				long longTestTime = getLongTime(testTime);
+
+				List<String> messages = new ArrayList<String>();
+				NodeList testMessageNodes = getNodesByXPath(log, MESSAGE_XPATH);
+				if (testMessageNodes != null) {
+					for (int i = 0; i < testMessageNodes.getLength(); i++) {
+						messages.add(testMessageNodes.item(i).getTextContent());
+					}
+				}
+
+				TestResult result;
+				if (isSuccess) {
+					result = new TestResult(testClass, testName, longTestTime);
+				} else {
+					String testFailureMessage = "";
+					if (!messages.isEmpty()) {
+						testFailureMessage = messages.get(0);
+					}
+					result = new TestResult(testClass, testName, longTestTime, DEFAULT_FAILURE_TYPE, testFailureMessage);
+				}
+				result.setMessages(messages);
+				result.setPath(path);
+				metrics.addTestParsed();
+				return result;
+			}
+		};
 	}
 
 	/**
-	 * Method to get  a List of ALL TestResults from root.xml.
+	 * Method to get a tree of ALL TestResults from root.xml in one pass.
+	 * Test logs are parsed concurrently on the shared {@link WorkerPool}, tests keep the order of root.xml.
 	 * 
 	 * @param basePath Location of root.xml and other result .xml files.
-	 * @return A List of TestResult objects.
+	 * @param metrics Publisher metrics.
+	 * @return Root of the tree, aggregated.
+	 * @throws IOException
+	 * @throws InterruptedException Parsing of the remaining logs is cancelled.
 	 */
-	private static List<TestResult> getAllTestResults(FilePath basePath) {
+	private static SuiteNode getTestTree(FilePath basePath, PublisherMetrics metrics) throws IOException, InterruptedException {
 
-		List<TestResult> testResults = new ArrayList<TestResult>();
-		NodeList nList = getNodesByXPath(basePath.child(ROOT_XML), TEST_RESULT_PROVIDER_XPATH);
+		SuiteNode root = new SuiteNode();
+		Map<Node, SuiteNode> nodes = new IdentityHashMap<Node, SuiteNode>();
+		NodeList nList = getNodesByXPath(basePath.child(ROOT_XML), TEST_RESULT_PROVIDER_XPATH, metrics);
 
-		for (int i = 0; i < nList.getLength(); i++) {
+		List<SuiteNode> suites = new ArrayList<SuiteNode>();
+		WorkerPool.Batch<TestResult> batch = new WorkerPool.Batch<TestResult>(0);
+		try {
+			for (int i = 0; i < nList.getLength(); i++) {
+
+				Node node = nList.item(i);
+				if (node.getNodeType() == Node.ELEMENT_NODE) {
+					//Test item is the parent of the provider, the test belongs to the item above
+					Node item = node.getParentNode().getParentNode();
+					SuiteNode suite = getSuiteNode(item, root, nodes);
+					suites.add(suite);
+					batch.submit(getTestResultFromNode(node, suite, basePath, metrics));
+				}
+			}
+			List<TestResult> results = batch.join();
+			for (int i = 0; i < results.size(); i++) {
+				suites.get(i).addTest(results.get(i));
+			}
+		} finally {
+			batch.cancel();
+		}
+		root.aggregate();
+		return root;
+	}
 
-			Node node = nList.item(i);
-			if (node.getNodeType() == Node.ELEMENT_NODE) {
-				testResults.add(getTestResultFromNode(node, basePath));
+	/**
+	 * Merge tests of a rerun over the tests of the original run.
+	 * A rerun test replaces the original test of the same log item and name, other original tests are kept.
+	 * Rerun tests the original run does not have are added.
+	 * 
+	 * @param original Tests of the original run.
+	 * @param rerun Tests of the rerun.
+	 * @return Root of the merged tree, aggregated.
+	 */
+	static SuiteNode merge(SuiteNode original, SuiteNode rerun) {
+
+		Map<String, TestResult> retried = new LinkedHashMap<String, TestResult>();
+		List<TestResult> tests = new ArrayList<TestResult>();
+		rerun.collectTests(tests);
+		for (TestResult test : tests) {
+			String key = getKey(test);
+			if (!retried.containsKey(key)) {
+				retried.put(key, test);
 			}
 		}
-		return testResults;
+
+		SuiteNode root = new SuiteNode();
+		tests.clear();
+		original.collectTests(tests);
+		for (TestResult test : tests) {
+			TestResult retry = retried.remove(getKey(test));
+			addTest(root, retry != null ? retry : test);
+		}
+		for (TestResult retry : retried.values()) {
+			addTest(root, retry);
+		}
+		root.aggregate();
+		return root;
+	}
+
+	private static String getKey(TestResult test) {
+		StringBuilder key = new StringBuilder();
+		for (String item : test.getPath()) {
+			key.append(item).append('\n');
+		}
+		return key.append(test.getName()).toString();
+	}
+
+	private static void addTest(SuiteNode root, TestResult test) {
+		SuiteNode node = root;
+		for (String item : test.getPath()) {
+			node = node.child(item);
+		}
+		node.addTest(test);
 	}
 
 	/**
-	 * Method to get a List of ALL TestSuiteResults.
+	 * Method to group tests by top-level log items. Items whose class names differ in case only share a suite.
 	 * 
-	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param tree Root of the test tree.
 	 * @return A List of TestSuiteResult objects.
 	 */
-	private static List<TestSuiteResult> getAllTestSuites(FilePath basePath) {
-
-		List<TestResult> testResults = getAllTestResults(basePath);
-		List<TestSuiteResult> testSuiteResults = new ArrayList<TestSuiteResult>();
-		boolean found = false;
-
-		for (int i = 0; i < testResults.size(); i++) {
-			found = false;
-			TestResult testResult = testResults.get(i);
-			String suitName = testResult.getSuiteName();
-
-			//Check if such test suite is in in the list
-			for (int j = 0; j < testSuiteResults.size(); j++) {
-				TestSuiteResult testSuiteResult = testSuiteResults.get(j);
-				String name = testSuiteResult.getName();
-				if (name.equalsIgnoreCase(suitName)) {
-					//Found in the list. Add TestResult to TestSuiteResult.
-					testSuiteResult.addTestResult(testResult);
-					found = true;
-					break;
-				}
+	private static List<TestSuiteResult> getTestSuites(SuiteNode tree) {
+
+		Map<String, TestSuiteResult> testSuiteResults = new LinkedHashMap<String, TestSuiteResult>();
+		if (!tree.getTests().isEmpty()) {
+			TestSuiteResult res = new TestSuiteResult("");
+			for (TestResult test : tree.getTests()) {
+				res.addTestResult(test);
 			}
-			//Not found case:
-			//Create new TestSuiteResult, add TestResult to the suite and add TestSuiteResult to the list.
-			if (!found) {
-				TestSuiteResult res = new TestSuiteResult(suitName);
-				res.addTestResult(testResult);
-				testSuiteResults.add(res);
+			testSuiteResults.put("", res);
+		}
+		for (SuiteNode child : tree.getChildren()) {
+			String key = child.getClassName().toLowerCase();
+			TestSuiteResult res = testSuiteResults.get(key);
+			if (res == null) {
+				res = new TestSuiteResult(child.getClassName());
+				testSuiteResults.put(key, res);
+			}
+			List<TestResult> tests = new ArrayList<TestResult>();
+			child.collectTests(tests);
+			for (TestResult test : tests) {
+				res.addTestResult(test);
 			}
 		}
-		return testSuiteResults;		
+		return new ArrayList<TestSuiteResult>(testSuiteResults.values());
+	}
+
+	/**
+	 * Method to get a List of ALL TestSuiteResults.
+	 * 
+	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param metrics Publisher metrics.
+	 * @return A List of TestSuiteResult objects.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private static List<TestSuiteResult> getAllTestSuites(FilePath basePath, PublisherMetrics metrics)
+			throws IOException, InterruptedException {
+		return getTestSuites(getTestTree(basePath, metrics));
 	}
 
 	/**
@@ -312,39 +447,141 @@ public class ResultParser implements Constants {
 	 * 
 	 * @param logPath Log directory.
 	 * @return JUnit XML results as a string.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static String getResultXml(FilePath basePath) throws IOException, InterruptedException {
+		return getResultXml(basePath, PublisherMetrics.DISABLED);
+	}
+
+	/**
+	 * Method to generate results XML as a string.
+	 * 
+	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param metrics Metrics to record opened files, parsed tests and buffer size to.
+	 * @return JUnit XML results as a string.
+	 * @throws IOException
+	 * @throws InterruptedException
 	 */
-	public static String getResultXml(FilePath basePath) {
+	public static String getResultXml(FilePath basePath, PublisherMetrics metrics) throws IOException, InterruptedException {
+		return getResultXml(getTestTree(basePath, metrics), SuiteLayout.FLAT, basePath, metrics);
+	}
 
-		List<TestSuiteResult> testSuiteResults = getAllTestSuites(basePath);
-		String testSuitesName = getRootLogDataName(basePath.child(ROOT_XML));
+	/**
+	 * Method to generate results XML of already parsed tests as a string.
+	 * 
+	 * @param tree Root of the test tree.
+	 * @param layout How suites are written.
+	 * @param basePath Location of root.xml.
+	 * @param metrics Publisher metrics.
+	 * @return JUnit XML results as a string.
+	 */
+	private static String getResultXml(SuiteNode tree, SuiteLayout layout, FilePath basePath, PublisherMetrics metrics) {
 
+		String testSuitesName = getRootLogDataName(basePath.child(ROOT_XML), metrics);
 
-		String result = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + 
-				"<testsuites" + 
-				((testSuitesName.length()==0 ? "" : " name=\"" + testSuitesName + "\"")) +
-				">\n";
+		StringBuilder result = new StringBuilder();
+		result.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<testsuites")
+				.append(testSuitesName.length()==0 ? "" : " name=\"" + TestResult.escapeXml(testSuitesName) + "\"")
+				.append(">\n");
 
-		for (int i = 0; i < testSuiteResults.size(); i++) {
-			result += testSuiteResults.get(i).getTestSuitResultXml();
+		if (layout == SuiteLayout.FLAT) {
+			for (TestSuiteResult suite : getTestSuites(tree)) {
+				result.append(suite.getTestSuitResultXml());
+			}
+		} else {
+			tree.appendXml(result, layout);
 		}
 
-		result += "</testsuites>";
+		result.append("</testsuites>");
 
-		return result;
+		metrics.updatePeakBuffer(result.length());
+		return result.toString();
 	}
 
 	/**
 	 * Generate JUnit XML file. Use platform default encoding.
 	 * 
-	 * @param workspace Path to home (job workspace)
+	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param out JUnit XML file to write.
+	 * @throws InterruptedException 
+	 * @throws IOException 
+	 */
+	public static void generateJUnitXML(FilePath basePath, FilePath out) throws IOException, InterruptedException {
+		generateJUnitXML(basePath, out, PublisherMetrics.DISABLED);
+	}
+
+	/**
+	 * Generate JUnit XML file. Use platform default encoding.
+	 * 
+	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param out JUnit XML file to write.
+	 * @param metrics Publisher metrics.
+	 * @return Parsed test suites, e.g. to build a summary of.
 	 * @throws InterruptedException 
 	 * @throws IOException 
 	 */
-	public static void generateJUnitXML(FilePath workspace, String resultLocation) throws IOException, InterruptedException {
+	public static List<TestSuiteResult> generateJUnitXML(FilePath basePath, FilePath out, PublisherMetrics metrics)
+			throws IOException, InterruptedException {
+		return generateJUnitXML(basePath, out, metrics, null, SuiteLayout.FLAT);
+	}
 
-		String str = getResultXml(workspace.child(resultLocation));
-		FilePath out = new FilePath(workspace, JUNIR_REPORT);
-		out.write(str, null);
+	/**
+	 * Generate JUnit XML file. Use platform default encoding.
+	 * 
+	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param out JUnit XML file to write.
+	 * @param metrics Publisher metrics.
+	 * @param note System output of every test, e.g. to tag retries. May be null.
+	 * @param layout How suites are written.
+	 * @return Parsed tests grouped by top-level log items, e.g. to build a summary of.
+	 * @throws InterruptedException 
+	 * @throws IOException 
+	 */
+	public static List<TestSuiteResult> generateJUnitXML(FilePath basePath, FilePath out, PublisherMetrics metrics,
+			String note, SuiteLayout layout) throws IOException, InterruptedException {
+		return generateJUnitXML(basePath, out, metrics, note, layout, null);
+	}
+
+	/**
+	 * Generate JUnit XML file of a rerun. Use platform default encoding.
+	 * 
+	 * @param basePath Location of root.xml and other result .xml files.
+	 * @param out JUnit XML file to write.
+	 * @param metrics Publisher metrics.
+	 * @param note System output of every parsed test, e.g. to tag retries. May be null.
+	 * @param layout How suites are written.
+	 * @param original Tests of the original run the parsed tests are merged over, see {@link #merge}. May be null.
+	 * @return Parsed tests grouped by top-level log items, e.g. to build a summary of.
+	 * @throws InterruptedException 
+	 * @throws IOException 
+	 */
+	public static List<TestSuiteResult> generateJUnitXML(FilePath basePath, FilePath out, PublisherMetrics metrics,
+			String note, SuiteLayout layout, SuiteNode original) throws IOException, InterruptedException {
+
+		SuiteNode tree = getTestTree(basePath, metrics);
+		if (note != null) {
+			List<TestResult> tests = new ArrayList<TestResult>();
+			tree.collectTests(tests);
+			for (TestResult test : tests) {
+				test.setSystemOut(note);
+			}
+		}
+		if (original != null) {
+			tree = merge(original, tree);
+		}
+		List<TestSuiteResult> testSuiteResults = getTestSuites(tree);
+		String str = getResultXml(tree, layout, basePath, metrics);
+		CountingOutputStream stream = new CountingOutputStream(out.write());
+		Writer writer = new OutputStreamWriter(stream);
+		try {
+			writer.write(str);
+		} finally {
+			writer.close();
+			metrics.addBytesWritten(stream.getByteCount());
+		}
+		return testSuiteResults;
 	}
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,361 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.XmlFile;
+import hudson.model.Run;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+
+/**
+ * Compact summary of published results: counts, failed tests and the slowest tests.
+ * Stored beside the build in {@link Constants#SUMMARY_XML}, so nothing has to re-read JUnit XML to show it.
+ * Summaries of several publishes (or matrix configurations) are merged with {@link #add(ResultSummary, String)}.
+ *
+ */
+public class ResultSummary implements Constants {
+
+	/**
+	 * Maximum number of failed tests kept in a summary.
+	 */
+	public static int MAX_FAILED = Integer.getInteger(ResultSummary.class.getName() + ".maxFailed", 200);
+
+	/**
+	 * Number of the slowest tests kept in a summary.
+	 */
+	public static int MAX_SLOWEST = Integer.getInteger(ResultSummary.class.getName() + ".maxSlowest", 20);
+
+	private static final Comparator<Test> SLOWEST_FIRST = new Comparator<Test>() {
+		public int compare(Test a, Test b) {
+			return a.time < b.time ? 1 : a.time == b.time ? 0 : -1;
+		}
+	};
+
+	private static final int CACHE_SIZE = 500;
+
+	private static final Map<String, SoftReference<ResultSummary>> CACHE =
+			new LinkedHashMap<String, SoftReference<ResultSummary>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SoftReference<ResultSummary>> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			};
+
+	private int total;
+	private int failed;
+	private long duration;
+	private final List<Test> failures = new ArrayList<Test>();
+	private final List<Test> slowest = new ArrayList<Test>();
+	private final List<Part> parts = new ArrayList<Part>();
+	private Map<String, Part> projects = new TreeMap<String, Part>();
+
+	/**
+	 * Summary of parsed test suites.
+	 *
+	 * @param suites Parsed suites.
+	 * @return New summary.
+	 */
+	public static ResultSummary of(List<TestSuiteResult> suites) {
+
+		ResultSummary summary = new ResultSummary();
+		for (TestSuiteResult suite : suites) {
+			for (TestResult result : suite.getTestResults()) {
+				Test test = new Test(suite.getName(), result.getName(), result.getTime(), result.getFailureDetails(),
+						result.getPath());
+				summary.total++;
+				summary.duration += test.time;
+				if (result.isFailed()) {
+					summary.failed++;
+					if (summary.failures.size() < MAX_FAILED) {
+						summary.failures.add(test);
+					}
+				}
+				summary.slowest.add(test);
+
+				//Top log item of a suite run is the suite itself, it is not a part of the path,
+				//so the path starts with the project
+				List<String> path = result.getPath();
+				if (!path.isEmpty()) {
+					summary.addProject(new Part(path.get(0), 1, result.isFailed() ? 1 : 0, test.time));
+				}
+			}
+		}
+		summary.trimSlowest();
+		return summary;
+	}
+
+	/**
+	 * Merge another summary into this one. Thread-safe.
+	 *
+	 * @param other Summary to add.
+	 * @param qualifier Appended to suite names and recorded as a part, e.g. matrix axes.
+	 * If null, parts of the other summary are taken as they are.
+	 */
+	public synchronized void add(ResultSummary other, String qualifier) {
+
+		total += other.total;
+		failed += other.failed;
+		duration += other.duration;
+
+		for (Test test : other.failures) {
+			if (failures.size() < MAX_FAILED) {
+				failures.add(test.qualify(qualifier));
+			}
+		}
+		for (Test test : other.slowest) {
+			slowest.add(test.qualify(qualifier));
+		}
+		trimSlowest();
+
+		if (qualifier != null) {
+			parts.add(new Part(qualifier, other.total, other.failed, other.duration));
+		} else {
+			parts.addAll(other.parts);
+		}
+		for (Part project : other.getProjects()) {
+			addProject(project);
+		}
+	}
+
+	private void addProject(Part project) {
+		if (projects == null) {
+			projects = new TreeMap<String, Part>();
+		}
+		Part existing = projects.get(project.name);
+		projects.put(project.name, existing == null ? project : new Part(project.name,
+				existing.total + project.total, existing.failed + project.failed, existing.duration + project.duration));
+	}
+
+	private void trimSlowest() {
+		Collections.sort(slowest, SLOWEST_FIRST);
+		while (slowest.size() > MAX_SLOWEST) {
+			slowest.remove(slowest.size() - 1);
+		}
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public int getPassed() {
+		return total - failed;
+	}
+
+	/**
+	 * @return Sum of test times, seconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public List<Test> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	public List<Test> getSlowest() {
+		return Collections.unmodifiableList(slowest);
+	}
+
+	/**
+	 * @return Per-part figures, ordered by part name. Empty unless summaries were merged with a qualifier.
+	 */
+	public synchronized List<Part> getParts() {
+		List<Part> result = new ArrayList<Part>(parts);
+		Collections.sort(result, new Comparator<Part>() {
+			public int compare(Part a, Part b) {
+				return a.name.compareTo(b.name);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return Per-project figures of project suite runs, ordered by project name.
+	 * Empty for summaries stored before they were recorded.
+	 */
+	public synchronized List<Part> getProjects() {
+		if (projects == null) {
+			return Collections.emptyList();
+		}
+		return new ArrayList<Part>(projects.values());
+	}
+
+	/**
+	 * Store summary beside the build.
+	 *
+	 * @param run Build.
+	 * @throws IOException
+	 */
+	public synchronized void save(Run<?, ?> run) throws IOException {
+		getFile(run).write(this);
+	}
+
+	/**
+	 * Load summary of the build.
+	 *
+	 * @param run Build.
+	 * @return Summary or null if the build has none.
+	 * @throws IOException
+	 */
+	public static ResultSummary load(Run<?, ?> run) throws IOException {
+		XmlFile file = getFile(run);
+		if (!file.exists()) {
+			return null;
+		}
+		return (ResultSummary) file.read();
+	}
+
+	/**
+	 * Summary of the build, read straight from the build directory without loading the build.
+	 * Kept in memory while there is enough of it. Must not be modified.
+	 *
+	 * @param buildDir Build directory.
+	 * @return Summary or null if the build has none.
+	 * @throws IOException
+	 */
+	public static ResultSummary get(File buildDir) throws IOException {
+		File file = new File(buildDir, SUMMARY_XML);
+		if (!file.isFile()) {
+			return null;
+		}
+		String key = file.getPath() + ":" + file.lastModified();
+		synchronized (CACHE) {
+			SoftReference<ResultSummary> ref = CACHE.get(key);
+			ResultSummary summary = ref == null ? null : ref.get();
+			if (summary != null) {
+				return summary;
+			}
+		}
+		ResultSummary summary = (ResultSummary) new XmlFile(Run.XSTREAM, file).read();
+		synchronized (CACHE) {
+			CACHE.put(key, new SoftReference<ResultSummary>(summary));
+		}
+		return summary;
+	}
+
+	private static XmlFile getFile(Run<?, ?> run) {
+		return new XmlFile(Run.XSTREAM, new File(run.getRootDir(), SUMMARY_XML));
+	}
+
+	/**
+	 * Single test of a summary.
+	 */
+	public static final class Test {
+
+		private final String suite;
+		private final String name;
+		private final long time;
+		private final String message;
+		private final List<String> path;
+
+		Test(String suite, String name, long time, String message, List<String> path) {
+			this.suite = suite;
+			this.name = name;
+			this.time = time;
+			this.message = message;
+			this.path = new ArrayList<String>(path);
+		}
+
+		Test qualify(String qualifier) {
+			return qualifier == null ? this : new Test(suite + " [" + qualifier + "]", name, time, message, getPath());
+		}
+
+		public String getSuite() {
+			return suite;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Test time, seconds.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		/**
+		 * @return Log item names above the test, see {@link TestResult#getPath()}.
+		 * Empty for summaries stored before the path was recorded.
+		 */
+		public List<String> getPath() {
+			return path == null ? Collections.<String>emptyList() : Collections.unmodifiableList(path);
+		}
+	}
+
+	/**
+	 * Figures of a single merged summary, e.g. of one matrix configuration, or of a single project.
+	 */
+	public static final class Part {
+
+		private final String name;
+		private final int total;
+		private final int failed;
+		private final long duration;
+
+		Part(String name, int total, int failed, long duration) {
+			this.name = name;
+			this.total = total;
+			this.failed = failed;
+			this.duration = duration;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		public long getDuration() {
+			return duration;
+		}
+	}
+}
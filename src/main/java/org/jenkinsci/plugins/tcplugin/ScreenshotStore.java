@@ -0,0 +1,482 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-project content-addressed storage of screenshots.
+ * Every image is stored once under its SHA-256 hash and reference counted by builds.
+ * Reference count changes are appended to a journal, which is merged into the counts file
+ * once it gets longer than the counts themselves.
+ *
+ */
+public class ScreenshotStore {
+
+	private static final Logger LOGGER = Logger.getLogger(ScreenshotStore.class.getName());
+
+	private static final String STORE_DIR = "tc-screenshots";
+	private static final String REFS_FILE = "refs.properties";
+	private static final String JOURNAL_EXT = ".journal";
+	private static final String OLD_EXT = ".old";
+	static final String IMAGE_EXT = ".png";
+
+	/**
+	 * Key of the journal generation in the counts file. Hashes never collide with it.
+	 */
+	private static final String GENERATION = "generation";
+
+	/**
+	 * Journal is merged into the counts file not earlier than after this many changes.
+	 */
+	private static final int MIN_JOURNAL = 1000;
+
+	/**
+	 * Number of projects whose reference counts are kept in memory.
+	 */
+	public static int CACHE_SIZE = Integer.getInteger(ScreenshotStore.class.getName() + ".cacheSize", 50);
+
+	/**
+	 * Loaded reference counts by store root. All changes of the counts are done under its lock,
+	 * so a store dropped from the cache is simply loaded again.
+	 */
+	private static final Map<File, Refs> REFS =
+			new LinkedHashMap<File, Refs>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<File, Refs> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			};
+
+	private final File root;
+
+	ScreenshotStore(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * Get store of the project.
+	 *
+	 * @param job Project.
+	 * @return Screenshot store. Never null.
+	 */
+	public static ScreenshotStore get(Job<?, ?> job) {
+		return new ScreenshotStore(new File(job.getRootDir(), STORE_DIR));
+	}
+
+	/**
+	 * Store all screenshots of the directory (not recursive).
+	 * Hashes are calculated on the node, so only images missing in the store are copied.
+	 *
+	 * @param dir Directory with screenshots.
+	 * @param move Delete the screenshots from the directory once stored?
+	 * @return Map of screenshot file names to hashes.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public Map<String, String> add(FilePath dir, boolean move) throws IOException, InterruptedException {
+
+		Map<String, String> screenshots = dir.act(new HashImages());
+
+		//Referenced blobs cannot be deleted, so it is safe to copy outside the lock
+		retain(screenshots.values());
+
+		try {
+			for (Map.Entry<String, String> entry : screenshots.entrySet()) {
+				File blob = getBlob(entry.getValue());
+				if (!blob.exists()) {
+					copy(dir.child(entry.getKey()), blob);
+				}
+			}
+		} catch (IOException e) {
+			release(screenshots.values());
+			throw e;
+		}
+
+		if (move) {
+			dir.act(new DeleteImages(screenshots.keySet()));
+		}
+		return screenshots;
+	}
+
+	/**
+	 * Blob file by hash.
+	 *
+	 * @param hash SHA-256 hash of the image.
+	 * @return Blob file. May not exist.
+	 */
+	public File getBlob(String hash) {
+		if (!hash.matches("[0-9a-f]{64}")) {
+			throw new IllegalArgumentException("Not a screenshot hash: " + hash);
+		}
+		return new File(new File(root, hash.substring(0, 2)), hash + IMAGE_EXT);
+	}
+
+	/**
+	 * Increase reference count of the blobs.
+	 *
+	 * @param hashes Blob hashes, one reference per item.
+	 * @throws IOException
+	 */
+	public void retain(Collection<String> hashes) throws IOException {
+		synchronized (REFS) {
+			getRefs().change(hashes, 1);
+		}
+	}
+
+	/**
+	 * Decrease reference count of the blobs. Blobs nobody references are deleted.
+	 *
+	 * @param hashes Blob hashes, one reference per item.
+	 * @throws IOException
+	 */
+	public void release(Collection<String> hashes) throws IOException {
+		synchronized (REFS) {
+			//Count is saved before the blob is deleted, so a failure leaves an orphan blob at most
+			for (String hash : getRefs().change(hashes, -1)) {
+				File blob = getBlob(hash);
+				if (blob.exists() && !blob.delete()) {
+					LOGGER.log(Level.WARNING, "Failed to delete {0}", blob);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reference count of the blob.
+	 *
+	 * @param hash Blob hash.
+	 * @return Number of references.
+	 * @throws IOException
+	 */
+	int getCount(String hash) throws IOException {
+		synchronized (REFS) {
+			return getRefs().get(hash);
+		}
+	}
+
+	private Refs getRefs() throws IOException {
+		Refs refs = REFS.get(root);
+		if (refs == null) {
+			refs = new Refs(root);
+			REFS.put(root, refs);
+		}
+		return refs;
+	}
+
+	/**
+	 * Reference counts of a store: counts file of the current generation and its journal.
+	 * Journal lines are <i>+hash</i> or <i>-hash</i>, one reference each.
+	 */
+	private static final class Refs {
+
+		private final File root;
+		private final Map<String, Integer> counts = new HashMap<String, Integer>();
+		private long generation = 0;
+		private int journal = 0;
+
+		Refs(File root) throws IOException {
+			this.root = root;
+			load();
+		}
+
+		int get(String hash) {
+			Integer count = counts.get(hash);
+			return count == null ? 0 : count;
+		}
+
+		private void add(String hash, int delta) {
+			int count = get(hash) + delta;
+			if (count > 0) {
+				counts.put(hash, count);
+			} else {
+				counts.remove(hash);
+			}
+		}
+
+		/**
+		 * Append changes to the journal and apply them. Journal is merged if it is long enough.
+		 *
+		 * @return Hashes nobody references anymore.
+		 */
+		List<String> change(Collection<String> hashes, int delta) throws IOException {
+			List<String> unused = new ArrayList<String>();
+			if (hashes.isEmpty()) {
+				return unused;
+			}
+			mkdirs();
+			Writer out = new OutputStreamWriter(new FileOutputStream(getJournal(generation), true), "US-ASCII");
+			try {
+				for (String hash : hashes) {
+					out.write((delta > 0 ? "+" : "-") + hash + "\n");
+				}
+			} finally {
+				out.close();
+			}
+			for (String hash : hashes) {
+				add(hash, delta);
+				if (get(hash) == 0) {
+					unused.add(hash);
+				}
+			}
+			journal += hashes.size();
+			if (journal > Math.max(MIN_JOURNAL, counts.size())) {
+				save();
+			}
+			return unused;
+		}
+
+		private void load() throws IOException {
+			File file = new File(root, REFS_FILE);
+			if (!file.exists()) {
+				//Save was interrupted after the old counts were moved aside
+				file = new File(root, REFS_FILE + OLD_EXT);
+			}
+			if (file.exists()) {
+				Properties properties = new Properties();
+				InputStream in = new FileInputStream(file);
+				try {
+					properties.load(in);
+				} finally {
+					in.close();
+				}
+				for (String key : properties.stringPropertyNames()) {
+					if (key.equals(GENERATION)) {
+						generation = Long.parseLong(properties.getProperty(key));
+					} else {
+						counts.put(key, Integer.valueOf(properties.getProperty(key)));
+					}
+				}
+			}
+
+			//Only the journal of the saved generation is not merged yet
+			File log = getJournal(generation);
+			if (log.exists()) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(log), "US-ASCII"));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						//Last line may be incomplete after a crash
+						if (line.length() == 65) {
+							add(line.substring(1), line.charAt(0) == '+' ? 1 : -1);
+							journal++;
+						}
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		}
+
+		/**
+		 * Write counts with the next generation, then drop the merged journal.
+		 * Counts are written to a temporary file and renamed over the old ones,
+		 * so a crash never leaves the store without counts.
+		 */
+		private void save() throws IOException {
+			Properties properties = new Properties();
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+			}
+			properties.setProperty(GENERATION, String.valueOf(generation + 1));
+
+			File tmp = new File(root, REFS_FILE + ".tmp");
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+			try {
+				properties.store(out, null);
+			} finally {
+				out.close();
+			}
+			File file = new File(root, REFS_FILE);
+			File old = new File(root, REFS_FILE + OLD_EXT);
+			if (!tmp.renameTo(file)) {
+				//Rename does not replace a file on every platform, old counts are kept until the new ones are in place
+				if (old.exists() && !old.delete() || !file.renameTo(old) || !tmp.renameTo(file)) {
+					throw new IOException("Failed to save " + file);
+				}
+			}
+			if (old.exists() && !old.delete()) {
+				LOGGER.log(Level.WARNING, "Failed to delete {0}", old);
+			}
+
+			File merged = getJournal(generation);
+			generation++;
+			journal = 0;
+			if (!merged.delete()) {
+				LOGGER.log(Level.WARNING, "Failed to delete {0}", merged);
+			}
+		}
+
+		private File getJournal(long generation) {
+			return new File(root, REFS_FILE + "." + generation + JOURNAL_EXT);
+		}
+
+		private void mkdirs() throws IOException {
+			if (!root.isDirectory() && !root.mkdirs()) {
+				throw new IOException("Failed to create " + root);
+			}
+		}
+	}
+
+	/**
+	 * Copy image to the store. Written to a temporary file first,
+	 * so a blob is either complete or absent.
+	 */
+	private static void copy(FilePath image, File blob) throws IOException, InterruptedException {
+
+		File dir = blob.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Failed to create " + dir);
+		}
+
+		File tmp = File.createTempFile("screenshot", ".tmp", dir);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+		try {
+			image.copyTo(out);
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(blob)) {
+			//Same image was stored by another build in the meantime
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Calculates hashes of all images in a directory on the node.
+	 */
+	private static final class HashImages extends MasterToSlaveFileCallable<Map<String, String>> {
+
+		private static final long serialVersionUID = 1L;
+
+		public Map<String, String> invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+
+			Map<String, String> result = new TreeMap<String, String>();
+			File[] files = dir.listFiles();
+			if (files == null) {
+				return result;
+			}
+
+			byte[] buffer = new byte[8192];
+			for (File file : files) {
+				if (!file.isFile() || !file.getName().toLowerCase().endsWith(IMAGE_EXT)) {
+					continue;
+				}
+				MessageDigest digest;
+				try {
+					digest = MessageDigest.getInstance("SHA-256");
+				} catch (NoSuchAlgorithmException e) {
+					throw new IOException(e.getMessage());
+				}
+				InputStream in = new DigestInputStream(new FileInputStream(file), digest);
+				try {
+					while (in.read(buffer) != -1) {
+						//just digest
+					}
+				} finally {
+					in.close();
+				}
+				result.put(file.getName(), Util.toHexString(digest.digest()));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Deletes stored images from a directory on the node.
+	 */
+	private static final class DeleteImages extends MasterToSlaveFileCallable<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Set<String> names;
+
+		DeleteImages(Set<String> names) {
+			this.names = new HashSet<String>(names);
+		}
+
+		public Void invoke(File dir, VirtualChannel channel) throws IOException, InterruptedException {
+			for (String name : names) {
+				File file = new File(dir, name);
+				if (file.exists() && !file.delete()) {
+					throw new IOException("Failed to delete " + file);
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Releases screenshots of deleted builds.
+	 */
+	@Extension
+	public static final class Reclaimer extends RunListener<Run<?, ?>> {
+
+		@Override
+		public void onDeleted(Run<?, ?> run) {
+			//Every publish of the build has its own action
+			for (ScreenshotsAction action : run.getActions(ScreenshotsAction.class)) {
+				try {
+					get(run.getParent()).release(action.getScreenshots().values());
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to release screenshots of " + run, e);
+				}
+			}
+		}
+	}
+}
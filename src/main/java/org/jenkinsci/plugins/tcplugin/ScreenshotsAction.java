@@ -0,0 +1,186 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.Jenkins;
+import jenkins.model.RunAction2;
+
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Build-level action serving screenshots from the project screenshot store.
+ * Further publishes of the same build get their own action, e.g. <i>tc-screenshots-2</i>.
+ * 
+ */
+public class ScreenshotsAction implements RunAction2 {
+
+	private static final String ACTION_NAME = "TestComplete screenshots";
+	private static final String ACTION_ICON_NAME = "folder.png";
+	private static final String ACTION_URL = "tc-screenshots";
+
+	/**
+	 * Screenshot file names to hashes.
+	 */
+	private final Map<String, String> screenshots;
+
+	/**
+	 * Number of the publish within the build, null for the first one.
+	 */
+	private final String publish;
+
+	private transient Run<?, ?> run;
+
+	public ScreenshotsAction(Run<?, ?> run, Map<String, String> screenshots, String publish) {
+		this.run = run;
+		this.screenshots = screenshots;
+		this.publish = publish;
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return publish == null ? ACTION_NAME : ACTION_NAME + " " + publish;
+	}
+
+	public String getUrlName() {
+		return getUrlName(publish);
+	}
+
+	/**
+	 * URL of the build screenshots for links of the HTML report.
+	 * HTML Publisher also serves the report of the last build from the project page, so links are
+	 * absolute paths when the Jenkins URL is configured. Otherwise they are relative to a report
+	 * one level below the build and work only from the build page.
+	 *
+	 * @param run Build.
+	 * @param publish Number of the publish within the build, null for the first one.
+	 * @return URL ending with a slash.
+	 */
+	static String getLinkUrl(Run<?, ?> run, String publish) {
+		String root = Jenkins.getInstance().getRootUrl();
+		if (root != null) {
+			try {
+				String path = new URL(root).getPath();
+				return (path.endsWith("/") ? path : path + "/") + run.getUrl() + getUrlName(publish) + "/";
+			} catch (MalformedURLException e) {
+				//NON-FATAL: relative link
+			}
+		}
+		return "../" + getUrlName(publish) + "/";
+	}
+
+	/**
+	 * URL name of the action of a publish, known before the action is created.
+	 *
+	 * @param publish Number of the publish within the build, null for the first one.
+	 * @return URL name relative to the build.
+	 */
+	static String getUrlName(String publish) {
+		return publish == null ? ACTION_URL : ACTION_URL + "-" + publish;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	public Map<String, String> getScreenshots() {
+		return Collections.unmodifiableMap(screenshots);
+	}
+
+	public Set<String> getNames() {
+		return screenshots.keySet();
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	/**
+	 * Serve screenshot by its file name. Content never changes, so it is cached by browsers.
+	 * 
+	 * @param req Request.
+	 * @param rsp Response.
+	 * @throws IOException
+	 */
+	public void doDynamic(StaplerRequest req, StaplerResponse rsp) throws IOException {
+
+		String name = req.getRestOfPath();
+		if (name.startsWith("/")) {
+			name = name.substring(1);
+		}
+
+		String hash = screenshots.get(name);
+		if (hash == null) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		File blob = ScreenshotStore.get(run.getParent()).getBlob(hash);
+		if (!blob.exists()) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String etag = "\"" + hash + "\"";
+		rsp.setHeader("ETag", etag);
+		//Content is behind build permissions, only the browser may keep it
+		rsp.setHeader("Cache-Control", "private, max-age=31536000");
+		if (etag.equals(req.getHeader("If-None-Match"))) {
+			rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		rsp.setContentType("image/png");
+		rsp.setContentLength((int) blob.length());
+		InputStream in = new FileInputStream(blob);
+		try {
+			OutputStream out = rsp.getOutputStream();
+			IOUtils.copy(in, out);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Action;
+import hudson.model.Job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project-level search of test log messages across builds.
+ * Reads per-build {@link MessageIndex} files straight from build directories, builds are not loaded.
+ *
+ */
+public class SearchAction implements Action {
+
+	private static final Logger LOGGER = Logger.getLogger(SearchAction.class.getName());
+
+	private static final String ACTION_NAME = "TestComplete log search";
+	private static final String ACTION_ICON_NAME = "search.png";
+	private static final String ACTION_URL = "tc-search";
+
+	/**
+	 * Number of the latest builds searched.
+	 */
+	public static int MAX_BUILDS = Integer.getInteger(SearchAction.class.getName() + ".maxBuilds", 100);
+
+	private final Job<?, ?> project;
+
+	public SearchAction(Job<?, ?> project) {
+		this.project = project;
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Job<?, ?> getProject() {
+		return project;
+	}
+
+	/**
+	 * Search the latest builds.
+	 *
+	 * @param query Words to search for. May be null.
+	 * @return Builds with matching tests, latest first.
+	 */
+	public List<Hit> search(String query) {
+
+		List<Hit> hits = new ArrayList<Hit>();
+		if (query == null || query.trim().length() == 0) {
+			return hits;
+		}
+
+		for (Integer number : getBuildNumbers(project, MAX_BUILDS)) {
+			try {
+				MessageIndex index = MessageIndex.get(new File(project.getBuildDir(), String.valueOf(number)));
+				if (index == null) {
+					continue;
+				}
+				List<String> tests = index.search(query);
+				if (!tests.isEmpty()) {
+					hits.add(new Hit(number, tests));
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to read message index of " + project.getFullName() + " #" + number, e);
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Numbers of the latest builds, taken from build directories without loading builds.
+	 *
+	 * @param project Project.
+	 * @param max Maximum number of builds.
+	 * @return Build numbers, latest first.
+	 */
+	static List<Integer> getBuildNumbers(Job<?, ?> project, int max) {
+		List<Integer> numbers = new ArrayList<Integer>();
+		String[] names = project.getBuildDir().list();
+		if (names == null) {
+			return numbers;
+		}
+		for (String name : names) {
+			if (name.matches("\\d+")) {
+				numbers.add(Integer.valueOf(name));
+			}
+		}
+		Collections.sort(numbers, Collections.reverseOrder());
+		return numbers.size() > max ? numbers.subList(0, max) : numbers;
+	}
+
+	/**
+	 * Matching tests of a single build.
+	 */
+	public static final class Hit {
+
+		private final int number;
+		private final List<String> tests;
+
+		Hit(int number, List<String> tests) {
+			this.number = number;
+			this.tests = tests;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public List<String> getTests() {
+			return tests;
+		}
+	}
+}
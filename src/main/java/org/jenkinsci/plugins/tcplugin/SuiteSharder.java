@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Splits projects of a project suite (.pjs file) into shards.
+ * Every shard is run by its own build, e.g. a matrix configuration with {@link #SHARD_VARIABLE} axis
+ * restricted to TestComplete agents. Results of the shards are merged by the matrix parent build.
+ *
+ */
+public class SuiteSharder {
+
+	/**
+	 * Environment variable with zero-based index of the shard to run.
+	 */
+	public static final String SHARD_VARIABLE = "TC_SHARD";
+
+	private static final String PROJECT_EXT = ".mds";
+
+	/**
+	 * Get names of the projects in the suite.
+	 * Projects are referred to by relative paths to their .mds files, project name is the file name.
+	 *
+	 * @param suite Content of .pjs file.
+	 * @return Sorted project names.
+	 * @throws IOException
+	 */
+	public static List<String> getProjects(InputStream suite) throws IOException {
+		Set<String> projects = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+		for (String path : getProjectPaths(suite)) {
+			String name = path.substring(Math.max(path.lastIndexOf('\\'), path.lastIndexOf('/')) + 1);
+			projects.add(name.substring(0, name.length() - PROJECT_EXT.length()));
+		}
+		return new ArrayList<String>(projects);
+	}
+
+	/**
+	 * Get paths of the project files of the suite.
+	 *
+	 * @param suite Content of .pjs file.
+	 * @return Paths to .mds files relative to the suite, as written in the suite.
+	 * @throws IOException
+	 */
+	public static List<String> getProjectPaths(InputStream suite) throws IOException {
+		Document doc;
+		try {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(suite);
+		} catch (ParserConfigurationException e) {
+			throw new IOException("Failed to read project suite: " + e.getMessage());
+		} catch (SAXException e) {
+			throw new IOException("Failed to read project suite: " + e.getMessage());
+		}
+
+		Set<String> paths = new LinkedHashSet<String>();
+		NodeList elements = doc.getElementsByTagName("*");
+		for (int i = 0; i < elements.getLength(); i++) {
+			NamedNodeMap attributes = ((Element) elements.item(i)).getAttributes();
+			for (int j = 0; j < attributes.getLength(); j++) {
+				String value = attributes.item(j).getNodeValue().trim();
+				if (value.toLowerCase().endsWith(PROJECT_EXT)) {
+					paths.add(value);
+				}
+			}
+		}
+		return new ArrayList<String>(paths);
+	}
+
+	/**
+	 * Get projects of the shard. Projects are dealt round-robin, so every project belongs to exactly one shard
+	 * and shard sizes differ by one at most.
+	 *
+	 * @param projects Sorted project names.
+	 * @param index Zero-based shard index.
+	 * @param count Number of shards.
+	 * @return Projects to run. Empty if there are more shards than projects.
+	 */
+	public static List<String> getShard(List<String> projects, int index, int count) {
+		if (count <= 1) {
+			return Collections.unmodifiableList(projects);
+		}
+		List<String> shard = new ArrayList<String>();
+		for (int i = index; i < projects.size(); i += count) {
+			shard.add(projects.get(i));
+		}
+		return shard;
+	}
+
+	/**
+	 * Get index of the shard to run from {@link #SHARD_VARIABLE}.
+	 *
+	 * @param env Build environment.
+	 * @param count Number of shards.
+	 * @return Zero-based shard index.
+	 * @throws AbortException If the variable is not set or out of range.
+	 */
+	public static int getShardIndex(EnvVars env, int count) throws AbortException {
+		String value = env.get(SHARD_VARIABLE);
+		if (value == null) {
+			throw new AbortException(SHARD_VARIABLE + " is not set. Add " + SHARD_VARIABLE
+					+ " axis with values 0.." + (count - 1) + " to the project");
+		}
+		int index;
+		try {
+			index = Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			index = -1;
+		}
+		if (index < 0 || index >= count) {
+			throw new AbortException(SHARD_VARIABLE + "=" + value + " is out of range 0.." + (count - 1));
+		}
+		return index;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Run;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.RunAction2;
+
+/**
+ * Build-level summary of TestComplete results.
+ * Summary itself is kept in its own file and loaded on first use, so build.xml stays small.
+ *
+ */
+public class SummaryAction implements RunAction2 {
+
+	private static final Logger LOGGER = Logger.getLogger(SummaryAction.class.getName());
+
+	private static final String ACTION_NAME = "TestComplete summary";
+	private static final String ACTION_ICON_NAME = "clipboard.png";
+	private static final String ACTION_URL = "tc-summary";
+
+	private transient Run<?, ?> run;
+	private transient ResultSummary summary;
+
+	public SummaryAction(Run<?, ?> run) {
+		this.run = run;
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Run<?, ?> getRun() {
+		return run;
+	}
+
+	/**
+	 * @return Summary of the build. Empty one if it cannot be loaded.
+	 */
+	public synchronized ResultSummary getSummary() {
+		if (summary == null) {
+			try {
+				summary = ResultSummary.load(run);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to load summary of " + run, e);
+			}
+			if (summary == null) {
+				summary = new ResultSummary();
+			}
+		}
+		return summary;
+	}
+
+	/**
+	 * Add summary to the build, merging it with the one already published in the same build.
+	 *
+	 * @param run Build.
+	 * @param summary Summary to add.
+	 * @param qualifier Qualifier of suite names, see {@link ResultSummary#add(ResultSummary, String)}.
+	 * @throws IOException
+	 */
+	public static void publish(Run<?, ?> run, ResultSummary summary, String qualifier) throws IOException {
+		synchronized (run) {
+			SummaryAction action = run.getAction(SummaryAction.class);
+			if (action == null) {
+				action = new SummaryAction(run);
+				action.summary = new ResultSummary();
+				run.addAction(action);
+			}
+			ResultSummary merged = action.getSummary();
+			merged.add(summary, qualifier);
+			merged.save(run);
+		}
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.Launcher;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixRun;
+import hudson.model.BuildListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Merges result summaries of matrix configurations into the parent build.
+ * Summaries are loaded concurrently on the shared {@link WorkerPool} as configurations complete,
+ * suite names are qualified with axes values.
+ *
+ */
+class SummaryAggregator extends MatrixAggregator {
+
+	private final ResultSummary summary = new ResultSummary();
+	private final List<Future<Void>> loads = new ArrayList<Future<Void>>();
+
+	SummaryAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+		super(build, launcher, listener);
+	}
+
+	@Override
+	public boolean endRun(final MatrixRun run) throws InterruptedException, IOException {
+		final String axes = run.getParent().getCombination().toString();
+		loads.add(WorkerPool.get().submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				ResultSummary configuration = ResultSummary.load(run);
+				if (configuration != null) {
+					summary.add(configuration, axes);
+				}
+				return null;
+			}
+		}));
+		return true;
+	}
+
+	@Override
+	public boolean endBuild() throws InterruptedException, IOException {
+		try {
+			for (Future<Void> load : loads) {
+				try {
+					load.get();
+				} catch (ExecutionException e) {
+					listener.getLogger().println("----> WARN: Failed to load configuration summary: " + e.getCause());
+				}
+			}
+		} finally {
+			//Interrupted build leaves nothing behind
+			for (Future<Void> load : loads) {
+				load.cancel(true);
+			}
+		}
+
+		if (!summary.getParts().isEmpty()) {
+			SummaryAction.publish(build, summary, null);
+			listener.getLogger().println("----> INFO: TestComplete summary of " + summary.getParts().size()
+					+ " configurations: " + summary.getFailed() + " of " + summary.getTotal() + " tests failed");
+		}
+		return true;
+	}
+}
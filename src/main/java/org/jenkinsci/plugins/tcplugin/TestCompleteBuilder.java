@@ -22,29 +22,46 @@
  */
 package org.jenkinsci.plugins.tcplugin;
 
+import hudson.AbortException;
+import hudson.EnvVars;
+import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.Extension;
+import hudson.util.ArgumentListBuilder;
 import hudson.util.FormValidation;
-import hudson.model.AbstractBuild;
-import hudson.model.BuildListener;
 import hudson.model.AbstractProject;
-import hudson.tasks.BatchFile;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.Builder;
 import hudson.tasks.BuildStepDescriptor;
+import jenkins.tasks.SimpleBuildStep;
 
+import org.apache.commons.io.output.CountingOutputStream;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Builder to run TestComplete tests.
+ * Keeps no state between runs, so several runs may proceed concurrently, e.g. in parallel Pipeline branches.
  *
  * @author Sergey Myasnikov
  */
-public class TestCompleteBuilder extends Builder {
+public class TestCompleteBuilder extends Builder implements SimpleBuildStep {
 
 	private final String testExecuteLocation;
 	private final String projectLocation;
@@ -52,6 +69,11 @@ public class TestCompleteBuilder extends Builder {
 	private final String additionalParameters;
 	private final boolean deleteLogs;
 	private final boolean deleteExtender;
+	private int shardCount;
+	private int inactivityTimeout;
+	private boolean rerunFailures;
+	private boolean orderByHistory;
+	private int maxFailedRuns;
 
 	@DataBoundConstructor
 	public TestCompleteBuilder(String testExecuteLocation,
@@ -94,19 +116,303 @@ public class TestCompleteBuilder extends Builder {
 		return deleteExtender;
 	}
 
-	@Override
-	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) 
-			throws InterruptedException {
-
-		BatchFile test = new BatchFile(BatchHelper.getBatch(
-				testExecuteLocation, 
-				projectLocation, 
-				projectName, 
-				additionalParameters, 
-				deleteLogs,
-				deleteExtender));
-		
-		return test.perform(build, launcher, listener);
+	public int getShardCount() {
+		return shardCount;
+	}
+
+	/**
+	 * Split projects of the suite into the given number of shards. The shard to run is taken from
+	 * {@link SuiteSharder#SHARD_VARIABLE}. 0 or 1 runs the whole suite.
+	 *
+	 * @param shardCount Number of shards.
+	 */
+	@DataBoundSetter
+	public void setShardCount(int shardCount) {
+		this.shardCount = Math.max(0, shardCount);
+	}
+
+	public int getInactivityTimeout() {
+		return inactivityTimeout;
+	}
+
+	/**
+	 * Kill TestExecute if it neither writes output nor changes files in the project directory
+	 * for the given number of minutes. 0 waits forever.
+	 *
+	 * @param inactivityTimeout Timeout, minutes.
+	 */
+	@DataBoundSetter
+	public void setInactivityTimeout(int inactivityTimeout) {
+		this.inactivityTimeout = Math.max(0, inactivityTimeout);
+	}
+
+	public boolean getRerunFailures() {
+		return rerunFailures;
+	}
+
+	/**
+	 * Run only the tests failed in the previous build, each with its own <i>/test:</i> run.
+	 * Everything is run if the previous build has no recorded failures.
+	 *
+	 * @param rerunFailures Rerun failures?
+	 */
+	@DataBoundSetter
+	public void setRerunFailures(boolean rerunFailures) {
+		this.rerunFailures = rerunFailures;
+	}
+
+	public boolean getOrderByHistory() {
+		return orderByHistory;
+	}
+
+	/**
+	 * Run projects of the suite one by one, recently failed and short ones first, see {@link HistoryOrder}.
+	 *
+	 * @param orderByHistory Order projects by history?
+	 */
+	@DataBoundSetter
+	public void setOrderByHistory(boolean orderByHistory) {
+		this.orderByHistory = orderByHistory;
+	}
+
+	public int getMaxFailedRuns() {
+		return maxFailedRuns;
+	}
+
+	/**
+	 * Skip remaining runs once the given number of TestExecute runs failed with errors. 0 runs everything.
+	 * Runs are counted, not tests: a run of a whole project fails once however many of its tests fail.
+	 *
+	 * @param maxFailedRuns Number of failed runs.
+	 */
+	@DataBoundSetter
+	public void setMaxFailedRuns(int maxFailedRuns) {
+		this.maxFailedRuns = Math.max(0, maxFailedRuns);
+	}
+
+	/**
+	 * Is the whole project suite run?
+	 */
+	private boolean isSuiteRun() {
+		return projectName.length() == 0 && projectLocation.toUpperCase().endsWith(".PJS");
+	}
+
+	/**
+	 * Is the suite split into shards? Sharding requires a project suite and no project name.
+	 */
+	private boolean isSharded() {
+		return shardCount > 1 && isSuiteRun();
+	}
+
+	public void perform(Run<?, ?> build, FilePath workspace, Launcher launcher, TaskListener listener)
+			throws InterruptedException, IOException {
+
+		EnvVars env = build.getEnvironment(listener);
+		env.put("WORKSPACE", workspace.getRemote());
+
+		//Project and test of every run
+		List<String[]> runs = rerunFailures ? getRetries(build, listener) : null;
+		if (runs == null) {
+			runs = new ArrayList<String[]>();
+			for (String project : getProjects(build, env, workspace, listener)) {
+				runs.add(new String[] {project, ""});
+			}
+		}
+
+		if (deleteLogs) {
+			long start = System.currentTimeMillis();
+			List<String> deleted = LogCleaner.deleteLogs(workspace, projectLocation, listener);
+			listener.getLogger().println("Deleted " + deleted.size() + " Log folders in "
+					+ (System.currentTimeMillis() - start) + " ms " + deleted);
+		}
+
+		//Everything is run even if some runs fail, so all results are reported
+		Result result = Result.SUCCESS;
+		List<String> failed = new ArrayList<String>();
+		boolean killed = false;
+		boolean stopped = false;
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				if (maxFailedRuns > 0 && failed.size() >= maxFailedRuns) {
+					listener.getLogger().println("----> WARN: " + failed.size() + " runs failed, skipping "
+							+ (runs.size() - i) + " remaining runs");
+					stopped = true;
+					break;
+				}
+				String project = runs.get(i)[0];
+				String test = runs.get(i)[1];
+				env.put(TestExecuteCommand.RUN_VARIABLE, String.valueOf(i + 1));
+				if (project.length() != 0) {
+					env.put(TestExecuteCommand.PROJECT_VARIABLE, project);
+				}
+				if (test.length() != 0) {
+					env.put(TestExecuteCommand.TEST_VARIABLE, test);
+				}
+				int exitCode = run(project, test, env, workspace, launcher, listener);
+				killed |= exitCode == TestExecuteCommand.KILLED;
+				String message = TestExecuteCommand.getMessage(exitCode);
+				listener.getLogger().println(message);
+
+				Result r = TestExecuteCommand.getResult(exitCode);
+				if (r.isWorseThan(Result.UNSTABLE)) {
+					failed.add((project.length() != 0 ? project + ": " : "") + (test.length() != 0 ? test + ": " : "") + message
+							+ (exitCode != TestExecuteCommand.KILLED ? " (exit code " + exitCode + ")" : ""));
+				}
+				if (r.isWorseThan(result)) {
+					result = r;
+				}
+			}
+		} finally {
+			if (deleteExtender) {
+				List<String> deleted = LogCleaner.deleteExtenders(workspace, projectLocation, listener);
+				listener.getLogger().println("Deleted " + deleted.size() + " .tcCfgExtender files " + deleted);
+			}
+		}
+
+		//Build goes on, so a publisher can parse whatever logs the hung or skipped runs have left
+		if (killed || stopped) {
+			listener.getLogger().println("TestComplete run failed: " + failed);
+			build.setResult(Result.FAILURE);
+			return;
+		}
+		if (result.isWorseThan(Result.UNSTABLE)) {
+			throw new AbortException("TestComplete run failed: " + failed);
+		}
+		build.setResult(result);
+	}
+
+	/**
+	 * Projects to run: the one given or the whole suite, or projects of the suite one by one.
+	 *
+	 * @return Project names. A single empty name runs the whole suite.
+	 */
+	private List<String> getProjects(Run<?, ?> build, EnvVars env, FilePath workspace, TaskListener listener)
+			throws InterruptedException, IOException {
+
+		if (!isSharded() && !(orderByHistory && isSuiteRun())) {
+			return Collections.singletonList(projectName);
+		}
+
+		List<String> projects;
+		InputStream suite = workspace.child(projectLocation.replace('\\', '/')).read();
+		try {
+			projects = SuiteSharder.getProjects(suite);
+		} finally {
+			suite.close();
+		}
+
+		if (isSharded()) {
+			int index = SuiteSharder.getShardIndex(env, shardCount);
+			int all = projects.size();
+			projects = SuiteSharder.getShard(projects, index, shardCount);
+			listener.getLogger().println("Shard " + index + " of " + shardCount + ": " + projects.size()
+					+ " of " + all + " projects " + projects);
+		}
+		if (orderByHistory) {
+			projects = HistoryOrder.of(build).sort(projects);
+			listener.getLogger().println("Run order: " + projects);
+		}
+		return projects;
+	}
+
+	/**
+	 * Failed tests of the previous build to rerun. Marks the build with {@link RerunAction}.
+	 *
+	 * @return Project and test name pairs, or null if everything has to be run.
+	 */
+	private List<String[]> getRetries(Run<?, ?> build, TaskListener listener) throws IOException {
+
+		Run<?, ?> previous = build.getPreviousCompletedBuild();
+		ResultSummary summary = previous == null ? null : ResultSummary.load(previous);
+		if (summary == null || summary.getFailed() == 0) {
+			listener.getLogger().println("No failed tests in the previous build, running all tests");
+			return null;
+		}
+		if (summary.getFailures().size() < summary.getFailed()) {
+			listener.getLogger().println("Too many failed tests in build #" + previous.getNumber() + ", running all tests");
+			return null;
+		}
+
+		List<String> tests = new ArrayList<String>();
+		List<String[]> runs = getRetries(summary.getFailures(), projectLocation.toUpperCase().endsWith(".PJS"), tests,
+				listener.getLogger());
+		if (runs == null) {
+			return null;
+		}
+		listener.getLogger().println("Rerunning " + runs.size() + " failed tests of build #" + previous.getNumber());
+		build.addAction(new RerunAction(build, previous.getNumber(), tests));
+		return runs;
+	}
+
+	/**
+	 * Project and test name pairs to rerun failed tests.
+	 *
+	 * @param failures Failed tests of the previous build.
+	 * @param suite Whether a project suite is run, so every test needs its project.
+	 * @param tests Receives display names of the tests to rerun.
+	 * @param logger Build log.
+	 * @return Distinct project and test name pairs, or null if a project is not known and everything has to be run.
+	 */
+	static List<String[]> getRetries(List<ResultSummary.Test> failures, boolean suite, List<String> tests,
+			PrintStream logger) {
+
+		Set<String> seen = new HashSet<String>();
+		List<String[]> runs = new ArrayList<String[]>();
+		for (ResultSummary.Test test : failures) {
+			//Top log item of a suite run is the suite itself, it is not a part of the path
+			List<String> path = test.getPath();
+			if (suite && path.isEmpty()) {
+				logger.println("Project of " + test.getName() + " is not known, running all tests");
+				return null;
+			}
+			String project = suite ? path.get(0) : "";
+			if (seen.add(project + "\n" + test.getName())) {
+				runs.add(new String[] {project, test.getName()});
+				tests.add(test.getSuite() + " / " + test.getName());
+			}
+		}
+		return runs;
+	}
+
+	/**
+	 * Run TestExecute or TestComplete once. Process is started directly, output goes to build log.
+	 *
+	 * @param project Name of the project in the suite. Can be empty.
+	 * @param test Name of the test. Can be empty.
+	 * @return Exit code or {@link TestExecuteCommand#KILLED}.
+	 */
+	private int run(String project, String test, EnvVars env, FilePath workspace, Launcher launcher, TaskListener listener)
+			throws InterruptedException, IOException {
+
+		ArgumentListBuilder args = TestExecuteCommand.getArguments(
+				toNodePath(testExecuteLocation, launcher),
+				toNodePath(projectLocation, launcher),
+				project,
+				test,
+				additionalParameters,
+				env);
+
+		Launcher.ProcStarter starter = launcher.launch()
+				.cmds(args)
+				.envs(env)
+				.pwd(workspace);
+		if (inactivityTimeout == 0) {
+			return starter.stdout(listener).join();
+		}
+
+		//Logs are written to the Log folders of the suite and its projects
+		CountingOutputStream output = new CountingOutputStream(listener.getLogger());
+		Watchdog watchdog = new Watchdog(starter.stdout(output).start(), output, workspace,
+				toNodePath(projectLocation, launcher), TimeUnit.MINUTES.toMillis(inactivityTimeout));
+		int exitCode = watchdog.join(listener);
+		return watchdog.isKilled() ? TestExecuteCommand.KILLED : exitCode;
+	}
+
+	/**
+	 * Paths are stored with Windows separators, revert them on Unix nodes, e.g. for a stub executable.
+	 */
+	private static String toNodePath(String path, Launcher launcher) {
+		return launcher.isUnix() ? path.replace('\\', '/') : path;
 	}
 
 	/**
@@ -137,8 +443,6 @@ public class TestCompleteBuilder extends Builder {
 			return "Execute TestComplete tests";
 		}
 		
-		boolean isSuitGiven = false;
-		
 		public boolean isApplicable(Class<? extends AbstractProject> aClass) {
 			return true;
 		}
@@ -183,15 +487,9 @@ public class TestCompleteBuilder extends Builder {
 			if (value.length() == 0 ||
 					!(value.toUpperCase().endsWith(".PJS") ||
 							value.toUpperCase().endsWith(".MDS"))) {				
-				isSuitGiven = false;
 				return FormValidation.error("Specify project or project suit (.mds or .pjs file)");
 			}
 			else{
-				if (value.toUpperCase().endsWith(".PJS")) {
-					isSuitGiven = true;
-				} else {
-					isSuitGiven = false;
-				}
 				return FormValidation.ok();
 			}
 		}
@@ -200,11 +498,14 @@ public class TestCompleteBuilder extends Builder {
 		 * 
 		 * @param project Project
 		 * @param value Project name provided by user
+		 * @param projectLocation Project / Project Suit location provided by user
 		 * @return FormValidation result
 		 * @throws IOException
 		 */
 		public FormValidation doCheckProjectName(@AncestorInPath AbstractProject<?, ?> project,
-				@QueryParameter String value) throws IOException {
+				@QueryParameter String value,
+				@QueryParameter String projectLocation) throws IOException {
+			boolean isSuitGiven = processPath(Util.fixNull(projectLocation)).toUpperCase().endsWith(".PJS");
 			if (value.length() == 0 && isSuitGiven){	
 				return FormValidation.warning("All projects in the suit will be executed");
 			} else {
@@ -212,7 +513,7 @@ public class TestCompleteBuilder extends Builder {
 			}
 		}
 		
-		/** Method to generate batch script in plugin config to check it.
+		/** Method to show command line in plugin config to check it.
 		 * 
 		 * @param testExecuteLocation TE or TC location given by user
 		 * @param projectLocation Project or Project Suit location given by user
@@ -220,11 +521,11 @@ public class TestCompleteBuilder extends Builder {
 		 * @param additionalParameters any other command line parameters given by user
 		 * @param deleteLogs Add Log directory deletion?
 		 * @param deleteExtender Delete .tcCfgExtender file
-		 * @return Result batch script as a FormValidation object
+		 * @return Command line as a FormValidation object
 		 * @throws IOException
 		 * @throws ServletException
 		 */
-		public FormValidation doTestBatch(
+		public FormValidation doTestCommand(
 				@QueryParameter("testExecuteLocation") final String testExecuteLocation,
 				@QueryParameter("projectLocation") final String projectLocation,
 				@QueryParameter("projectName") final String projectName,
@@ -232,13 +533,26 @@ public class TestCompleteBuilder extends Builder {
 				@QueryParameter("deleteLogs") final boolean deleteLogs,
 				@QueryParameter("deleteExtender") final boolean deleteExtender) throws IOException, ServletException {				
 
-			return FormValidation.ok(BatchHelper.getBatch(
+			if (processPath(testExecuteLocation).length() == 0 || processPath(projectLocation).length() == 0) {
+				return FormValidation.error("Specify the location of TestComplete or TestExecute and project or project suit");
+			}
+
+			String result = "";
+			if (deleteLogs) {
+				result += "Delete Log folders of the project or project suite\n";
+			}
+			result += TestExecuteCommand.getArguments(
 							processPath(testExecuteLocation), 
 							processPath(projectLocation), 
 							projectName.trim(), 
+							"",
 							additionalParameters, 
-							deleteLogs,
-							deleteExtender));
+							new EnvVars()).toStringWithQuote() + "\n";
+			if (deleteExtender) {
+				result += "Delete .tcCfgExtender files of the project or project suite\n";
+			}
+			result += "Exit code 0: SUCCESS, 1: UNSTABLE, other: FAILURE";
+			return FormValidation.ok(result);
 		}
 
 	}
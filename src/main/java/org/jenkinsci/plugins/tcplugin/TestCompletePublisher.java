@@ -22,63 +22,87 @@
  */
 package org.jenkinsci.plugins.tcplugin;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import org.jenkinsci.plugins.tcplugin.PublishPipeline.Stage;
+import org.jenkinsci.plugins.tcplugin.results.SuiteLayout;
+import org.jenkinsci.plugins.tcplugin.results.SuiteNode;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
 
 import htmlpublisher.HtmlPublisher;
 import htmlpublisher.HtmlPublisherTarget;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
-import hudson.matrix.MatrixConfiguration;
-import hudson.matrix.MatrixProject;
-import hudson.model.AbstractBuild;
+import hudson.matrix.MatrixAggregatable;
+import hudson.matrix.MatrixAggregator;
+import hudson.matrix.MatrixBuild;
 import hudson.model.AbstractProject;
-import hudson.model.Descriptor;
 import hudson.model.Action;
 import hudson.model.BuildListener;
 import hudson.model.Result;
-import hudson.model.Saveable;
 import hudson.model.Hudson;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 import hudson.tasks.ArtifactArchiver;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
-import hudson.tasks.junit.TestDataPublisher;
 import hudson.tasks.junit.JUnitResultArchiver;
-import hudson.tasks.test.TestResultProjectAction;
-import hudson.util.DescribableList;
 import hudson.util.FormValidation;
+import jenkins.tasks.SimpleBuildStep;
+import net.sf.json.JSONObject;
 
 /**
- * Recorder to store test results
+ * Recorder to store test results.
+ * Every publish writes to its own output directory, so several publishes may proceed concurrently,
+ * e.g. in parallel Pipeline branches.
  *
  * @author Sergey Myasnikov
  * 
  */
-public class TestCompletePublisher extends Recorder implements Constants {
+public class TestCompletePublisher extends Recorder implements SimpleBuildStep, MatrixAggregatable, Constants {
 	
 	final String MHT = ".mht";
 	final String PNG = ".png";
 	final String REPLACE_WHAT = "http://localhost";
 	final String REPLACE_WITH = ".";
+	final String[] REPLACE_CONTENT_TYPES = {"text/html", "text/xml", "application/xml", "text/xsl"};
 	
 	final String HTML_RESULT_NAME = "Test Results";
 	final String INDEX_HTML = "index.htm";
 
+	/**
+	 * Publish on any node, not only on Windows ones.
+	 * Used to run the publisher on generated reports on Linux, e.g. by the scalability suite.
+	 */
+	public static boolean SKIP_NODE_CHECK = Boolean.getBoolean(TestCompletePublisher.class.getName() + ".skipNodeCheck");
+
 	private final String resultLocation;
 	private final boolean isMhtFile;
 	private final boolean publishHtml;
 	private final boolean publishJunit;
 	private final boolean publishAtrifacts;
 	private final boolean publishScreenshots;
+	private SuiteLayout suiteLayout;
+
+	/**
+	 * Project actions by project. Matrix configurations share the publisher with their parent.
+	 */
+	private transient Map<AbstractProject<?, ?>, Collection<Action>> projectActions;
 
 
 	@DataBoundConstructor
@@ -121,22 +145,34 @@ public class TestCompletePublisher extends Recorder implements Constants {
 		return publishScreenshots;
 	}
 
+	/**
+	 * @return How the log hierarchy is written as JUnit suites. Flat for configurations saved before it was set.
+	 */
+	public SuiteLayout getSuiteLayout() {
+		return suiteLayout == null ? SuiteLayout.FLAT : suiteLayout;
+	}
+
+	@DataBoundSetter
+	public void setSuiteLayout(SuiteLayout suiteLayout) {
+		this.suiteLayout = suiteLayout;
+	}
+
 	public BuildStepMonitor getRequiredMonitorService() {
 		return BuildStepMonitor.NONE;
 	}
 
 
-	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+	public void perform(final Run<?, ?> build, final FilePath workspace, final Launcher launcher, final TaskListener listener) {
 		
 		try {
 			//========== I. INITIAL CHECK AND PREPARE ==========
 		
 			//Should be Windows node...
-			if (launcher.isUnix()) {
+			if (launcher.isUnix() && !SKIP_NODE_CHECK) {
 				echo("----> ERROR: Only Windows node is supported", listener);
 				//FATAL
 				build.setResult(Result.FAILURE);
-				return true;
+				return;
 			}
 
 			//...and location should be specified
@@ -144,130 +180,293 @@ public class TestCompletePublisher extends Recorder implements Constants {
 				echo("----> SKIPPED: Result location is not specified", listener);
 				//FATAL
 				build.setResult(Result.FAILURE);
-				return true;
+				return;
 			}
 
-			FilePath workspace = build.getWorkspace();
-	
-			//========== II. CLEAN-UP ==========			
-			try {
-				FilePath dir = workspace.child(MHT_PARSE_DESTINATION);
-				FilePath report = workspace.child(JUNIR_REPORT);
-				
-				if (dir.exists() || report.exists()) {
-					echo("----> INFO: Deleting previous results", listener);
-					dir.deleteRecursive();
-					report.delete();			
-				}
-			} catch (IOException e) {
-				echo("----> WARN: Failed to cleanup "+ MHT_PARSE_DESTINATION + ": " + e.getMessage(), listener);
-				//NON-FATAL
-			}			
-			
-			//========== III. DECOMPRESS MHTML FILE ==========			
-			if (isMhtFile) {
-				
-				echo("----> INFO: Parsing MHTML file " + workspace + "\\" + resultLocation, listener);
-				echo("----> INFO: Parsing to " + workspace + "\\" + MHT_PARSE_DESTINATION, listener);
+			//A pattern, e.g. for sharded runs, publishes every matching file on its own
+			List<String> locations = getLocations(workspace);
+			if (locations.isEmpty()) {
+				echo("----> ERROR: No files match " + resultLocation, listener);
+				//FATAL
+				build.setResult(Result.FAILURE);
+				return;
+			}
+			for (String location : locations) {
+				publish(build, workspace, launcher, listener, location);
+			}
+		} catch (IOException e) {
+			echo("----> ERROR: Failed to prepare output directory: " + e.getMessage(), listener);
+			//FATAL
+			build.setResult(Result.FAILURE);
+		} catch (InterruptedException e){
+			echo("----> WARN: Step execution was interrupted", listener);
+			//build.getExecutor().abortResult();
+			build.setResult(Result.ABORTED);
+		}
+	}
+
+	/**
+	 * Publish a single result file or directory.
+	 * 
+	 * @param location Workspace-based location of .mht file or directory with results.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private void publish(final Run<?, ?> build, final FilePath workspace, final Launcher launcher,
+			final TaskListener listener, final String location) throws IOException, InterruptedException {
+
+		//Each publish writes to its own directory, previous builds' ones are deleted in background
+		final String outputName = WorkspaceReaper.claim(workspace, build.getNumber());
+		final String output = MHT_PARSE_DESTINATION + "/" + outputName;
+		final String report = output + "/" + JUNIR_REPORT;
+		//Further publishes of the same build get their own actions: <build>-2 gives "2"
+		final String publishNo = outputName.equals(String.valueOf(build.getNumber()))
+				? null
+				: outputName.substring(outputName.indexOf('-') + 1);
+		
+		//Stages below start as soon as the stages they depend on are completed
+		PublishPipeline pipeline = new PublishPipeline();
+		final PublisherMetrics metrics = new PublisherMetrics();
+
+		//========== II. CLEAN-UP ==========			
+		Stage cleanup = pipeline.add(new Stage("Clean-up") {
+			boolean perform() throws InterruptedException {
 				try {
-					echo("----> INFO: Decompressing MHTML file", listener);
-					decompress(build, listener, workspace);
-				} catch (IOException e1) {
-					echo("----> ERROR: Failed to parse MHTML file: " + e1.getMessage(), listener);
-					//FATAL
-					build.setResult(Result.FAILURE);
+					if (WorkspaceReaper.retire(workspace, build.getNumber())) {
+						echo("----> INFO: Previous results moved to " + MHT_PARSE_TRASH + " for background deletion", listener);
+					}
+					WorkspaceReaper.schedule(workspace);
+				} catch (IOException e) {
+					echo("----> WARN: Failed to cleanup "+ MHT_PARSE_DESTINATION + ": " + e.getMessage(), listener);
+					//NON-FATAL
+				}
+				return true;
+			}
+		});
+		
+		//========== III. DECOMPRESS MHTML FILE ==========			
+		Stage decompress = null;
+		if (isMhtFile) {
+			decompress = pipeline.add(new Stage("Decompress", cleanup) {
+				boolean perform() throws InterruptedException {
+					echo("----> INFO: Parsing MHTML file " + workspace + "\\" + location, listener);
+					echo("----> INFO: Parsing to " + workspace.child(output), listener);
+					try {
+						echo("----> INFO: Decompressing MHTML file", listener);
+						decompress(build, listener, workspace, location, output, metrics,
+								publishScreenshots && publishHtml ? ScreenshotsAction.getLinkUrl(build, publishNo) : null);
+					} catch (IOException e1) {
+						echo("----> ERROR: Failed to parse MHTML file: " + e1.getMessage(), listener);
+						//FATAL
+						build.setResult(Result.FAILURE);
+						return false;
+					} catch (NullPointerException e2) {
+						echo("----> ERROR: Failed to parse MHTML file: " + e2.getMessage(), listener);
+						//FATAL
+						build.setResult(Result.FAILURE);
+						return false;
+					}
 					return true;
-				} catch (NullPointerException e2) {
-					echo("----> ERROR: Failed to parse MHTML file: " + e2.getMessage(), listener);
+				}
+			});
+		}
+	
+		//========== IV. GENERATE NEW JUNIT RESULT FILE ==========
+		Stage junitXml = pipeline.add(new Stage("JUnit xml", cleanup, decompress) {
+			boolean perform() throws InterruptedException {
+				List<TestSuiteResult> suites;
+				try {
+					echo("----> INFO: Generating JUnit xml", listener);
+					//Results of a rerun are tagged as retries and merged over the results of the rerun build
+					RerunAction rerun = build.getAction(RerunAction.class);
+					SuiteNode original = null;
+					if (rerun != null && publishNo == null) {
+						try {
+							original = ResultExport.read(new File(build.getParent().getBuildDir(), String.valueOf(rerun.getPrevious())));
+						} catch (IOException e) {
+							echo("----> WARN: Failed to read results of build #" + rerun.getPrevious() + ": " + e.getMessage(), listener);
+							//NON-FATAL
+						}
+						if (original == null) {
+							echo("----> WARN: Only retries are published, no results of build #" + rerun.getPrevious() + " to merge them over", listener);
+						}
+					}
+					suites = ResultParser.generateJUnitXML(
+							workspace.child(isMhtFile ? output : location), workspace.child(report), metrics,
+							rerun != null ? rerun.getNote() : null, getSuiteLayout(), original);
+					if (rerun != null) {
+						rerun.count(suites);
+					}
+				} catch (IOException e) {
+					echo("----> ERROR: Failded to generate JUnit xml file: " + e.getMessage(), listener);
 					//FATAL
 					build.setResult(Result.FAILURE);
-					return true;
-				}				
-			}
-		
-			//========== IV. GENERATE NEW JUNIT RESULT FILE ==========
-			try {
-				echo("----> INFO: Generating JUnit xml", listener);
-				if (isMhtFile) {
-					ResultParser.generateJUnitXML(workspace, MHT_PARSE_DESTINATION);
-				} else {
-					ResultParser.generateJUnitXML(workspace, resultLocation);
+					return false;
+				}
+				try {
+					SummaryAction.publish(build, ResultSummary.of(suites), null);
+					MessageIndex.publish(build, suites);
+					ResultExport.publish(build, suites);
+					ResultIndex.publish(build, suites);
+					synchronized (build) {
+						if (build.getAction(ExportAction.class) == null) {
+							build.addAction(new ExportAction(build));
+						}
+						if (build.getAction(QueryAction.class) == null) {
+							build.addAction(new QueryAction(build));
+						}
+					}
+				} catch (IOException e) {
+					echo("----> WARN: Failed to store result summary, message index, export and query index: " + e.getMessage(), listener);
+					//NON-FATAL
 				}
-			} catch (IOException e) {
-				echo("----> ERROR: Failded to generate JUnit xml file: " + e.getMessage(), listener);
-				//FATAL
-				build.setResult(Result.FAILURE);
 				return true;
 			}
-			
-			//========== V. PUBLISH JUNIT RESULTS (MANDATORY) ==========
-			echo("----> INFO: JUnit publish started", listener);	
-			DescribableList<TestDataPublisher, Descriptor<TestDataPublisher>> testDataPublishers = 
-					new DescribableList<TestDataPublisher, Descriptor<TestDataPublisher>>(Saveable.NOOP);
-			JUnitResultArchiver publisher = new JUnitResultArchiver(JUNIR_REPORT, true, testDataPublishers);
+		});
 		
-			try {
-				publisher.perform(build, launcher, listener);				
-			} catch (IOException e) {
-				echo("----> ERROR: Failded to publish JUnit results: " + e.getMessage(), listener);
-				//FATAL
-				build.setResult(Result.FAILURE);
+		//========== V. PUBLISH JUNIT RESULTS (MANDATORY) ==========
+		Stage junitPublish = pipeline.add(new Stage("JUnit publish", junitXml) {
+			boolean perform() throws InterruptedException {
+				echo("----> INFO: JUnit publish started", listener);	
+				JUnitResultArchiver publisher = new JUnitResultArchiver(report);
+				publisher.setKeepLongStdio(true);
+			
+				try {
+					publisher.perform(build, workspace, launcher, listener);
+				} catch (IOException e) {
+					echo("----> ERROR: Failded to publish JUnit results: " + e.getMessage(), listener);
+					//FATAL
+					build.setResult(Result.FAILURE);
+					return false;
+				}
 				return true;
 			}
+		});
 
-			//========== VI. PUBLISH MHTML AS ARTIFACT (OPTION) ==========
-			if (publishAtrifacts && isMhtFile) {
-				echo("----> INFO: Publish MHTML as artifact", listener);
-				ArtifactArchiver artArch1 = new ArtifactArchiver(resultLocation, null, true, true);
-				artArch1.perform(build, launcher, listener);							
-			}
-			
-			if (publishScreenshots) {			
-				if (isMhtFile) {
-					ArtifactArchiver artArch2 = new ArtifactArchiver(MHT_PARSE_DESTINATION + "//*.png", null, true, true);
-					artArch2.perform(build, launcher, listener);	
-				} else {
-					ArtifactArchiver artArch3 = new ArtifactArchiver(resultLocation + "//*.png", null, true, true);
-					artArch3.perform(build, launcher, listener);	
+		//========== VI. PUBLISH MHTML AS ARTIFACT (OPTION) ==========
+		if (publishAtrifacts && isMhtFile) {
+			//Only a file that could be decompressed and whose results were published is archived
+			pipeline.add(new Stage("MHTML artifact", decompress, junitPublish) {
+				boolean perform() throws InterruptedException {
+					echo("----> INFO: Publish MHTML as artifact", listener);
+					ArtifactArchiver artArch1 = new ArtifactArchiver(location);
+					artArch1.setAllowEmptyArchive(true);
+					artArch1.perform(build, workspace, launcher, listener);
+					try {
+						//Report compaction drops only the files archived here
+						ReportCompactor.addArtifact(build.getRootDir(), location);
+					} catch (IOException e) {
+						echo("----> WARN: Failed to record MHTML artifact, it is kept by report compaction: " + e.getMessage(), listener);
+						//NON-FATAL
+					}
+					return true;
 				}
-			}
-	
-			//========== VI. PUBLISH HTML RESULTS (OPTION) ==========	
-			if (publishHtml) {
-				
-				//Change relative paths
-				echo("----> INFO: Changing paths", listener);
-				try {
-					changePaths(listener, workspace);
-				} catch (IOException e) {
-					echo("----> WARN: Failed to configure paths in " + ROOT_XML + ", HTML may be broken: " + e.getMessage(), listener);
-					//NON-FATAL
+			});
+		}
+		
+		//Only decompressed results are ours to change, so images of a result directory stay in the report
+		Stage screenshots = null;
+		if (publishScreenshots && isMhtFile) {
+			screenshots = pipeline.add(new Stage("Screenshots", decompress) {
+				boolean perform() throws InterruptedException {
+					echo("----> INFO: Storing screenshots", listener);
+					try {
+						//Identical screenshots are stored only once per project, report links point to the store
+						Map<String, String> stored = ScreenshotStore.get(build.getParent()).add(workspace.child(output), true);
+						if (!stored.isEmpty()) {
+							build.addAction(new ScreenshotsAction(build, stored, publishNo));
+						}
+						echo("----> INFO: " + stored.size() + " screenshots stored", listener);
+					} catch (IOException e) {
+						echo("----> WARN: Failed to store screenshots, the HTML report shows no images: " + e.getMessage(), listener);
+						//NON-FATAL
+					}
+					return true;
 				}
-					
-				echo("----> INFO: Publish decompressed HTML", listener);
-				if (Hudson.getInstance().getPlugin("htmlpublisher") != null) {
-
-					List<HtmlPublisherTarget> list = new ArrayList<HtmlPublisherTarget>();
-					list.add(new HtmlPublisherTarget(
-							HTML_RESULT_NAME,
-							MHT_PARSE_DESTINATION,
-							INDEX_HTML,
-							true,
-							true));
-					HtmlPublisher htmlPublisher = new HtmlPublisher(list);
-					htmlPublisher.perform(build, launcher, listener);
-				} else {
-					echo("----> ERROR: Cannot find 'HTML Publisher' plugin", listener);
-					build.setResult(Result.UNSTABLE);
+			});
+		}
+
+		//========== VI. PUBLISH HTML RESULTS (OPTION) ==========	
+		if (publishHtml) {
+			
+			//JUnit xml is written to the published directory, stored screenshots are not copied to the report
+			pipeline.add(new Stage("HTML publish", decompress, junitXml, screenshots) {
+				boolean perform() throws InterruptedException {
+					echo("----> INFO: Publish decompressed HTML", listener);
+					if (Hudson.getInstance().getPlugin("htmlpublisher") != null) {
+	
+						//Further publishes of the same build get their own report
+						String name = publishNo == null
+								? HTML_RESULT_NAME
+								: HTML_RESULT_NAME + " " + outputName;
+
+						List<HtmlPublisherTarget> list = new ArrayList<HtmlPublisherTarget>();
+						list.add(new HtmlPublisherTarget(
+								name,
+								isMhtFile ? output : location,
+								INDEX_HTML,
+								true,
+								true,
+								false));
+						HtmlPublisher htmlPublisher = new HtmlPublisher(list);
+						htmlPublisher.perform(build, workspace, launcher, listener);
+						//Same archive, served with caching, compression and ranges
+						build.addAction(new HtmlReportAction(build, name, publishNo));
+					} else {
+						echo("----> ERROR: Cannot find 'HTML Publisher' plugin", listener);
+						build.setResult(Result.UNSTABLE);
+					}
 					return true;
 				}
-			}
-		} catch (InterruptedException e){
-			echo("----> WARN: Step execution was interrupted", listener);
-			//build.getExecutor().abortResult();
-			build.setResult(Result.ABORTED);
+			});
+		}
+		
+		//Heavy stages of all builds share the master, wait for a free slot
+		PublishAdmission admission = PublishAdmission.get();
+		long memory = 0;
+		try {
+			memory = PublishAdmission.estimate(workspace.child(location));
+		} catch (IOException e) {
+			echo("----> WARN: Failed to estimate result size: " + e.getMessage(), listener);
+			//NON-FATAL
+		}
+		if (admission.getQueued() > 0) {
+			echo("----> INFO: Waiting for " + admission.getQueued() + " queued publishes", listener);
+		}
+		PublishAdmission.Ticket ticket = admission.acquire(memory);
+		echo("----> INFO: Publish admitted after " + ticket.getWaited() + " ms", listener);
+		metrics.addStageTime("Admission", ticket.getWaited());
+
+		long start = System.currentTimeMillis();
+		try {
+			pipeline.run(metrics);
+		} finally {
+			admission.release(ticket);
+			metrics.addStageTime("Total", System.currentTimeMillis() - start);
+			build.addAction(metrics.toAction(publishNo));
 		}
-		return true;
+	}
+
+	/**
+	 * Resolve result location. A pattern is resolved to all matching .mht files, sorted.
+	 * 
+	 * @param workspace
+	 * @return Workspace-based locations. Empty if the pattern matches nothing.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private List<String> getLocations(FilePath workspace) throws IOException, InterruptedException {
+		List<String> locations = new ArrayList<String>();
+		if (!isMhtFile || !(resultLocation.contains("*") || resultLocation.contains("?") || resultLocation.contains(","))) {
+			locations.add(resultLocation);
+			return locations;
+		}
+		String base = workspace.getRemote();
+		for (FilePath file : workspace.list(resultLocation)) {
+			locations.add(file.getRemote().substring(base.length() + 1));
+		}
+		Collections.sort(locations);
+		return locations;
 	}
 
 	/**
@@ -276,7 +475,7 @@ public class TestCompletePublisher extends Recorder implements Constants {
 	 * @param string
 	 * @param listener
 	 */
-	private void echo(String string, BuildListener listener){		
+	private void echo(String string, TaskListener listener){		
 		listener.getLogger().println(string);
 	}
 	
@@ -286,66 +485,166 @@ public class TestCompletePublisher extends Recorder implements Constants {
 	 * @param build
 	 * @param listener
 	 * @param workspace
+	 * @param location Workspace-based location of .mht file.
+	 * @param output Workspace-based output directory.
+	 * @param metrics Publisher metrics.
+	 * @param screenshots URL of the build screenshots to point image links to, see {@link ScreenshotsAction#getLinkUrl}. Null keeps the links.
 	 * @throws InterruptedException 
 	 * @throws NullPointerException 
 	 * @throws Exception
 	 */
-	private void decompress(AbstractBuild<?, ?> build,
-							BuildListener listener,
-							FilePath workspace) throws IOException, NullPointerException, InterruptedException {
+	private void decompress(Run<?, ?> build,
+							TaskListener listener,
+							FilePath workspace,
+							String location,
+							String output,
+							PublisherMetrics metrics,
+							String screenshots) throws IOException, NullPointerException, InterruptedException {
 
 		MHTParser mhtparser = new MHTParser(		
-			workspace.child(resultLocation),
-			workspace.child(MHT_PARSE_DESTINATION));	
+			workspace.child(location),
+			workspace.child(output));
+		mhtparser.setMetrics(metrics);
+		//Localhost-based links are changed to relative ones while parts are written
+		for (String type : REPLACE_CONTENT_TYPES) {
+			mhtparser.addRewrite(type, REPLACE_WHAT, REPLACE_WITH);
+			if (screenshots != null) {
+				mhtparser.addLinkRewrite(type, REPLACE_WHAT + "/", ScreenshotStore.IMAGE_EXT, screenshots);
+			}
+		}
 		mhtparser.decompress();
 	}
 	
-	/**
-	 * Replace localhost-based paths to relative paths.
-	 * 
-	 * @param listener
-	 * @param workspace
-	 * @throws IOException
-	 * @throws InterruptedException 
-	 */
-	private void changePaths(BuildListener listener, FilePath workspace) throws IOException, InterruptedException {
-		
-		FilePath path = workspace.child(MHT_PARSE_DESTINATION).child(ROOT_XML);
-
-		String content = "";
-		content = path.readToString();
-		content = content.replaceAll(REPLACE_WHAT, REPLACE_WITH);
-		path.write(content, null);
-	}
-	
-	
 	@Override
 	public Collection<? extends Action> getProjectActions(AbstractProject<?, ?> project) {
 
+		//Publisher is immutable and replaced on every configuration change, so are the cached actions
+		synchronized (this) {
+			if (projectActions == null) {
+				projectActions = new WeakHashMap<AbstractProject<?, ?>, Collection<Action>>();
+			}
+			Collection<Action> actions = projectActions.get(project);
+			if (actions == null) {
+				actions = createProjectActions(project);
+				projectActions.put(project, actions);
+			}
+			return actions;
+		}
+	}
+
+	private Collection<Action> createProjectActions(AbstractProject<?, ?> project) {
+
 		ArrayList<Action> actions = new ArrayList<Action>();
 
-		actions.add(new TestResultProjectAction(project));
+		actions.add(new TrendAction(project));
+		actions.add(new SearchAction(project));
+		actions.add(new ProjectExportAction(project));
 		
 		if (this.getPublishHtml()) {
-			actions.add(new ReportAction());
-			if (project instanceof MatrixProject && ((MatrixProject) project).getActiveConfigurations() != null){
-				for (MatrixConfiguration mc : ((MatrixProject) project).getActiveConfigurations()){
-					try {
-						mc.onLoad(mc.getParent(), mc.getName());
-					}
-					catch (IOException e){
-						//Could not reload the configuration.
-					}
-				}
-			}
+			//Reports of a matrix project are stored in configuration builds, linked all from one page
+			actions.add(new ReportAction(project));
 		}
-		return actions;
+		return Collections.unmodifiableList(actions);
 	}
 	
 
+	/**
+	 * Merges summaries of matrix configurations into the parent build.
+	 */
+	public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+		return new SummaryAggregator(build, launcher, listener);
+	}
+
 	@Extension
 	public static final class DescriptorImpl extends BuildStepDescriptor<Publisher> {
 
+		/**
+		 * Days after which screenshots of successful builds are dropped. 0 keeps them forever.
+		 */
+		private int screenshotRetentionDays;
+
+		/**
+		 * Days after which only summary, message index and JUnit results of a build are kept. 0 keeps everything.
+		 */
+		private int reportRetentionDays;
+
+		/**
+		 * Publishes decompressing and parsing at the same time. 0 for no limit.
+		 */
+		private int maxConcurrentPublishes;
+
+		/**
+		 * Estimated memory of publishes running at the same time, megabytes. 0 for no limit.
+		 */
+		private int maxPublishMemory;
+
+		/**
+		 * Threads of the shared worker pool. 0 for the number of processors.
+		 */
+		private int workerThreads;
+
+		/**
+		 * Tasks waiting for a worker. 0 for no limit.
+		 */
+		private int workerQueue;
+
+		/**
+		 * Whether workers are virtual threads, if the JVM supports them.
+		 */
+		private boolean virtualThreads;
+
+		public DescriptorImpl() {
+			load();
+			apply();
+		}
+
+		@Override
+		public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+			screenshotRetentionDays = Math.max(0, json.optInt("screenshotRetentionDays", 0));
+			reportRetentionDays = Math.max(0, json.optInt("reportRetentionDays", 0));
+			maxConcurrentPublishes = Math.max(0, json.optInt("maxConcurrentPublishes", 0));
+			maxPublishMemory = Math.max(0, json.optInt("maxPublishMemory", 0));
+			workerThreads = Math.max(0, json.optInt("workerThreads", 0));
+			workerQueue = Math.max(0, json.optInt("workerQueue", 0));
+			virtualThreads = json.optBoolean("virtualThreads");
+			save();
+			apply();
+			return true;
+		}
+
+		private void apply() {
+			PublishAdmission.get().configure(maxConcurrentPublishes, maxPublishMemory * 1024L * 1024L);
+			WorkerPool.configure(workerThreads, workerQueue, virtualThreads);
+		}
+
+		public int getMaxConcurrentPublishes() {
+			return maxConcurrentPublishes;
+		}
+
+		public int getMaxPublishMemory() {
+			return maxPublishMemory;
+		}
+
+		public int getWorkerThreads() {
+			return workerThreads;
+		}
+
+		public int getWorkerQueue() {
+			return workerQueue;
+		}
+
+		public boolean getVirtualThreads() {
+			return virtualThreads;
+		}
+
+		public int getScreenshotRetentionDays() {
+			return screenshotRetentionDays;
+		}
+
+		public int getReportRetentionDays() {
+			return reportRetentionDays;
+		}
+
 		@Override
 		public boolean isApplicable(
 				final Class<? extends AbstractProject> jobType) {
@@ -0,0 +1,158 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.EnvVars;
+import hudson.model.Result;
+import hudson.util.ArgumentListBuilder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Command line of TestExecute or TestComplete and its exit codes.
+ * @see <a href="http://support.smartbear.com/viewarticle/55587">http://support.smartbear.com/viewarticle/55587</a>
+ *
+ */
+public class TestExecuteCommand {
+
+	/**
+	 * Environment variable with the name of the project being run. Lets every run export its own log,
+	 * e.g. <i>/ExportLog:Logs\%TC_PROJECT%.mht</i>.
+	 */
+	public static final String PROJECT_VARIABLE = "TC_PROJECT";
+
+	/**
+	 * Environment variable with the name of the test being rerun.
+	 */
+	public static final String TEST_VARIABLE = "TC_TEST";
+
+	/**
+	 * Environment variable with the one-based number of the run within the build step,
+	 * e.g. <i>/ExportLog:Logs\%TC_RUN%.mht</i>.
+	 */
+	public static final String RUN_VARIABLE = "TC_RUN";
+
+	/**
+	 * Pseudo exit code of a run killed by {@link Watchdog}.
+	 */
+	public static final int KILLED = Integer.MIN_VALUE;
+
+	/**
+	 * Windows style variable reference, e.g. <i>%TC_PROJECT%</i>.
+	 */
+	private static final Pattern VARIABLE = Pattern.compile("%([^%\\s]+)%");
+
+	/**
+	 * Build command line.
+	 *
+	 * @param testExecuteLocation Location of TestExecute.exe or TestComplete.exe.
+	 * @param projectLocation Workspace-based location of test project (.mds file) or project suite (.pjs file).
+	 * @param projectName Name of project in the suite. Can be empty.
+	 * @param testName Name of the test to run. Can be empty.
+	 * @param additionalParameters Other command line arguments, space separated.
+	 * Both <i>%VAR%</i> and <i>${VAR}</i> references are expanded.
+	 * @param env Build environment.
+	 * @return Arguments.
+	 */
+	public static ArgumentListBuilder getArguments(String testExecuteLocation,
+			String projectLocation,
+			String projectName,
+			String testName,
+			String additionalParameters,
+			EnvVars env) {
+
+		ArgumentListBuilder args = new ArgumentListBuilder();
+		args.add(testExecuteLocation, projectLocation, "/run");
+		if (projectName.length() != 0) {
+			args.add("/project:" + projectName);
+		}
+		if (testName.length() != 0) {
+			args.add("/test:" + testName);
+		}
+		if (additionalParameters != null) {
+			args.addTokenized(expand(env.expand(additionalParameters), env));
+		}
+		return args;
+	}
+
+	/**
+	 * Expand Windows style variable references. Unknown variables are left as is.
+	 */
+	static String expand(String value, EnvVars env) {
+		Matcher m = VARIABLE.matcher(value);
+		StringBuffer result = new StringBuffer();
+		while (m.find()) {
+			String var = env.get(m.group(1));
+			m.appendReplacement(result, Matcher.quoteReplacement(var != null ? var : m.group()));
+		}
+		m.appendTail(result);
+		return result.toString();
+	}
+
+	/**
+	 * Map exit code to build result.
+	 *
+	 * @param exitCode Exit code of TestExecute or TestComplete.
+	 * @return SUCCESS for no errors, UNSTABLE for warnings, FAILURE otherwise.
+	 */
+	public static Result getResult(int exitCode) {
+		switch (exitCode) {
+		case 0:
+			return Result.SUCCESS;
+		case 1:
+			return Result.UNSTABLE;
+		default:
+			return Result.FAILURE;
+		}
+	}
+
+	/**
+	 * Describe exit code.
+	 *
+	 * @param exitCode Exit code of TestExecute or TestComplete.
+	 * @return Message.
+	 */
+	public static String getMessage(int exitCode) {
+		switch (exitCode) {
+		case 0:
+			return "No errors";
+		case 1:
+			return "There are warnings";
+		case 2:
+			return "There are errors";
+		case 3:
+			return "The script cannot be run";
+		case 4:
+			return "Timeout elapses";
+		case 1000:
+			return "Another instance of TestComplete or TestExecute is already running";
+		case -1:
+			return "License check failed";
+		case KILLED:
+			return "Killed after inactivity timeout";
+		default:
+			return "Unknown exit code " + exitCode;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.model.Action;
+import hudson.model.Job;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Project-level trend of TestComplete results.
+ * Drawn from per-build {@link ResultSummary} files only, neither builds nor their JUnit results are loaded.
+ *
+ */
+public class TrendAction implements Action {
+
+	private static final Logger LOGGER = Logger.getLogger(TrendAction.class.getName());
+
+	private static final String ACTION_NAME = "TestComplete trend";
+	private static final String ACTION_ICON_NAME = "graph.png";
+	private static final String ACTION_URL = "tc-trend";
+
+	/**
+	 * Number of the latest builds shown.
+	 */
+	public static int MAX_BUILDS = Integer.getInteger(TrendAction.class.getName() + ".maxBuilds", 50);
+
+	static final int WIDTH = 500;
+	static final int HEIGHT = 200;
+
+	private final Job<?, ?> project;
+
+	public TrendAction(Job<?, ?> project) {
+		this.project = project;
+	}
+
+	public String getIconFileName() {
+		return ACTION_ICON_NAME;
+	}
+
+	public String getDisplayName() {
+		return ACTION_NAME;
+	}
+
+	public String getUrlName() {
+		return ACTION_URL;
+	}
+
+	public Job<?, ?> getProject() {
+		return project;
+	}
+
+	public int getWidth() {
+		return WIDTH;
+	}
+
+	public int getHeight() {
+		return HEIGHT;
+	}
+
+	/**
+	 * @return Figures of the latest builds with results, oldest first.
+	 */
+	public List<Point> getTrend() {
+		List<Point> trend = new ArrayList<Point>();
+		for (Integer number : SearchAction.getBuildNumbers(project, MAX_BUILDS)) {
+			try {
+				ResultSummary summary = ResultSummary.get(new File(project.getBuildDir(), String.valueOf(number)));
+				if (summary != null) {
+					trend.add(new Point(number, summary.getTotal(), summary.getFailed(), summary.getDuration()));
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to read summary of " + project.getFullName() + " #" + number, e);
+			}
+		}
+		Collections.reverse(trend);
+		return trend;
+	}
+
+	/**
+	 * @return Stacked bars of failed and passed tests, scaled to the chart, oldest first.
+	 */
+	public List<Bar> getBars() {
+		List<Point> trend = getTrend();
+		List<Bar> bars = new ArrayList<Bar>();
+		if (trend.isEmpty()) {
+			return bars;
+		}
+		int max = 1;
+		for (Point point : trend) {
+			max = Math.max(max, point.total);
+		}
+		int width = WIDTH / trend.size();
+		for (int i = 0; i < trend.size(); i++) {
+			Point point = trend.get(i);
+			int failed = (int) ((long) point.failed * HEIGHT / max);
+			int passed = (int) ((long) (point.total - point.failed) * HEIGHT / max);
+			bars.add(new Bar(point, i * width, Math.max(1, width - 1), failed, passed));
+		}
+		return bars;
+	}
+
+	/**
+	 * Figures of a single build.
+	 */
+	public static final class Point {
+
+		private final int number;
+		private final int total;
+		private final int failed;
+		private final long duration;
+
+		Point(int number, int total, int failed, long duration) {
+			this.number = number;
+			this.total = total;
+			this.failed = failed;
+			this.duration = duration;
+		}
+
+		public int getNumber() {
+			return number;
+		}
+
+		public int getTotal() {
+			return total;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return Sum of test times, seconds.
+		 */
+		public long getDuration() {
+			return duration;
+		}
+	}
+
+	/**
+	 * Bar of a single build in chart coordinates, failed tests at the top.
+	 */
+	public static final class Bar {
+
+		private final Point point;
+		private final int x;
+		private final int width;
+		private final int failedHeight;
+		private final int passedHeight;
+
+		Bar(Point point, int x, int width, int failedHeight, int passedHeight) {
+			this.point = point;
+			this.x = x;
+			this.width = width;
+			this.failedHeight = failedHeight;
+			this.passedHeight = passedHeight;
+		}
+
+		public Point getPoint() {
+			return point;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getFailedY() {
+			return HEIGHT - passedHeight - failedHeight;
+		}
+
+		public int getFailedHeight() {
+			return failedHeight;
+		}
+
+		public int getPassedY() {
+			return HEIGHT - passedHeight;
+		}
+
+		public int getPassedHeight() {
+			return passedHeight;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.MasterToSlaveFileCallable;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Waits for TestExecute and kills it when it shows no activity for too long, e.g. hangs on a modal dialog.
+ * Activity is any output of the process or any change of files in the <i>Log</i> folders
+ * of the project, or of the suite and its projects, where TestComplete writes its logs.
+ *
+ */
+public class Watchdog {
+
+	/**
+	 * Interval between two activity checks, milliseconds.
+	 */
+	public static long POLL = Long.getLong(Watchdog.class.getName() + ".poll", 30000);
+
+	private final Proc proc;
+	private final CountingOutputStream output;
+	private final FilePath workspace;
+	private final String projectLocation;
+	private final long timeout;
+
+	private boolean killed;
+
+	/**
+	 * @param proc Started process.
+	 * @param output Process output, counted.
+	 * @param workspace Job workspace.
+	 * @param projectLocation Workspace-based or absolute location of .mds or .pjs file.
+	 * @param timeout Inactivity timeout, milliseconds.
+	 */
+	public Watchdog(Proc proc, CountingOutputStream output, FilePath workspace, String projectLocation, long timeout) {
+		this.proc = proc;
+		this.output = output;
+		this.workspace = workspace;
+		this.projectLocation = projectLocation;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Wait for the process. Kills the process tree on inactivity timeout.
+	 *
+	 * @param listener Build log.
+	 * @return Exit code.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public int join(TaskListener listener) throws IOException, InterruptedException {
+
+		List<String> dirs = getLogDirs(listener);
+		long bytes = output.getByteCount();
+		String logs = getLogState(dirs);
+		long active = System.currentTimeMillis();
+
+		while (proc.isAlive()) {
+			try {
+				Thread.sleep(Math.min(POLL, timeout));
+			} catch (InterruptedException e) {
+				//Build is aborted
+				proc.kill();
+				throw e;
+			}
+
+			long b = output.getByteCount();
+			String l = getLogState(dirs);
+			long now = System.currentTimeMillis();
+			if (b != bytes || !l.equals(logs)) {
+				bytes = b;
+				logs = l;
+				active = now;
+			} else if (now - active >= timeout && proc.isAlive()) {
+				listener.getLogger().println("----> WARN: No activity for "
+						+ TimeUnit.MILLISECONDS.toMinutes(now - active) + " minutes, killing TestExecute");
+				killed = true;
+				proc.kill();
+				break;
+			}
+		}
+		return proc.join();
+	}
+
+	/**
+	 * Was the process killed by the watchdog?
+	 */
+	public boolean isKilled() {
+		return killed;
+	}
+
+	/**
+	 * Log folders to watch, the same ones {@link LogCleaner} deletes. Suite is read once per run.
+	 * Failure to read it leaves the process output only.
+	 */
+	private List<String> getLogDirs(TaskListener listener) throws InterruptedException {
+		try {
+			return workspace.act(new LogDirs(projectLocation));
+		} catch (IOException e) {
+			listener.getLogger().println("----> WARN: Failed to find Log folders, watching output only: " + e.getMessage());
+			//NON-FATAL
+			return Collections.emptyList();
+		}
+	}
+
+	/**
+	 * Number and latest modification time of the files in the log folders.
+	 * Failure to read them is not activity.
+	 */
+	private String getLogState(List<String> dirs) throws InterruptedException {
+		if (dirs.isEmpty()) {
+			return "";
+		}
+		try {
+			return workspace.act(new LogState(dirs));
+		} catch (IOException e) {
+			return "";
+		}
+	}
+
+	private static final class LogDirs extends MasterToSlaveFileCallable<List<String>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String projectLocation;
+
+		LogDirs(String projectLocation) {
+			this.projectLocation = projectLocation;
+		}
+
+		public List<String> invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+			List<String> dirs = new ArrayList<String>();
+			for (File dir : LogCleaner.getLogDirs(workspace, projectLocation)) {
+				dirs.add(dir.getPath());
+			}
+			return dirs;
+		}
+	}
+
+	private static final class LogState extends MasterToSlaveFileCallable<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> dirs;
+
+		LogState(List<String> dirs) {
+			this.dirs = dirs;
+		}
+
+		public String invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+			long[] state = new long[2];
+			for (String dir : dirs) {
+				walk(new File(dir), state);
+			}
+			return state[0] + ":" + state[1];
+		}
+
+		private static void walk(File dir, long[] state) {
+			File[] children = dir.listFiles();
+			if (children == null) {
+				return;
+			}
+			for (File child : children) {
+				if (child.isDirectory()) {
+					walk(child, state);
+				} else {
+					state[0]++;
+					state[1] = Math.max(state[1], child.lastModified());
+				}
+			}
+		}
+	}
+}
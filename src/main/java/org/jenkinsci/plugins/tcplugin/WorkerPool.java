@@ -0,0 +1,295 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.util.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide pool of worker threads on the master, shared by publisher stages, parsers and aggregators.
+ * Size, queue bound and virtual threads are set on the global configuration page.
+ * When the queue is full, the submitting thread runs the task itself.
+ *
+ */
+final class WorkerPool {
+
+	private static final Logger LOGGER = Logger.getLogger(WorkerPool.class.getName());
+
+	private static final int DEFAULT_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Runs rejected tasks in the submitting thread, also after the executor was replaced and shut down.
+	 */
+	private static final RejectedExecutionHandler CALLER_RUNS = new RejectedExecutionHandler() {
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+			task.run();
+		}
+	};
+
+	private static volatile ExecutorService executor = create(0, 0, false);
+
+	private WorkerPool() {
+	}
+
+	/**
+	 * @return Shared executor. Replaced on reconfiguration, so should not be kept.
+	 */
+	static ExecutorService get() {
+		return executor;
+	}
+
+	/**
+	 * Replace the shared executor. Tasks already submitted finish on the old one.
+	 *
+	 * @param size Number of threads. 0 for the number of processors.
+	 * @param queue Number of waiting tasks. 0 for no limit.
+	 * @param virtual Whether to use virtual threads, if the JVM supports them.
+	 */
+	static synchronized void configure(int size, int queue, boolean virtual) {
+		ExecutorService old = executor;
+		executor = create(size, queue, virtual);
+		old.shutdown();
+	}
+
+	private static ExecutorService create(int size, int queue, boolean virtual) {
+		int threads = size > 0 ? size : DEFAULT_SIZE;
+		if (virtual) {
+			ExecutorService perTask = getVirtualThreadExecutor();
+			if (perTask != null) {
+				return new BoundedExecutor(perTask, threads, queue);
+			}
+		}
+		BlockingQueue<Runnable> tasks = queue > 0
+				? new ArrayBlockingQueue<Runnable>(queue)
+				: new LinkedBlockingQueue<Runnable>();
+		ThreadPoolExecutor result = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, tasks,
+				new DaemonThreadFactory(), CALLER_RUNS);
+		//Idle threads go away between publishes
+		result.allowCoreThreadTimeOut(true);
+		return result;
+	}
+
+	/**
+	 * Executor starting a new virtual thread per task, looked up reflectively as the plugin is built for older JVMs.
+	 * Virtual threads are not pooled, so it must not be wrapped into a fixed pool.
+	 *
+	 * @return Executor or null if the JVM has no virtual threads.
+	 */
+	private static ExecutorService getVirtualThreadExecutor() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Object factory = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class
+					.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+		} catch (Exception e) {
+			LOGGER.log(Level.INFO, "Virtual threads are not supported, using platform threads: {0}", e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Runs every task on its own thread of a thread-per-task executor, at most <i>threads</i> at a time.
+	 * Tasks over the limit wait in their threads, up to <i>queue</i> of them.
+	 * Over that, or after shutdown, the submitting thread runs the task itself, like the platform pool.
+	 */
+	private static final class BoundedExecutor extends AbstractExecutorService {
+
+		private final ExecutorService perTask;
+		private final Semaphore running;
+		private final Semaphore admitted;
+
+		/**
+		 * @param perTask Thread-per-task executor.
+		 * @param threads Tasks running at the same time.
+		 * @param queue Tasks waiting to run. 0 for no limit.
+		 */
+		BoundedExecutor(ExecutorService perTask, int threads, int queue) {
+			this.perTask = perTask;
+			this.running = new Semaphore(threads);
+			this.admitted = queue > 0 ? new Semaphore(threads + queue) : null;
+		}
+
+		public void execute(final Runnable task) {
+			if (admitted != null && !admitted.tryAcquire()) {
+				task.run();
+				return;
+			}
+			try {
+				perTask.execute(new Runnable() {
+					public void run() {
+						try {
+							running.acquire();
+							try {
+								task.run();
+							} finally {
+								running.release();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} finally {
+							if (admitted != null) {
+								admitted.release();
+							}
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				if (admitted != null) {
+					admitted.release();
+				}
+				task.run();
+			}
+		}
+
+		public void shutdown() {
+			perTask.shutdown();
+		}
+
+		public List<Runnable> shutdownNow() {
+			return perTask.shutdownNow();
+		}
+
+		public boolean isShutdown() {
+			return perTask.isShutdown();
+		}
+
+		public boolean isTerminated() {
+			return perTask.isTerminated();
+		}
+
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return perTask.awaitTermination(timeout, unit);
+		}
+	}
+
+	/**
+	 * Tasks of a single caller, e.g. parts of one publish.
+	 * Waiting caller runs the tasks not started yet itself, so nested batches never starve the pool.
+	 * Interrupting the caller cancels all tasks of the batch.
+	 *
+	 * @param <T> Task result.
+	 */
+	static final class Batch<T> {
+
+		private final int maxPending;
+		private final LinkedList<FutureTask<T>> pending = new LinkedList<FutureTask<T>>();
+		private final List<T> results = new ArrayList<T>();
+
+		/**
+		 * @param maxPending Tasks submitted but not collected at most, bounds memory held by them.
+		 * When exceeded, submit waits for the oldest task. 0 for no limit.
+		 */
+		Batch(int maxPending) {
+			this.maxPending = maxPending;
+		}
+
+		/**
+		 * Submit a task.
+		 *
+		 * @param task Task.
+		 * @throws IOException Thrown by an earlier task.
+		 * @throws InterruptedException
+		 */
+		void submit(Callable<T> task) throws IOException, InterruptedException {
+			FutureTask<T> future = new FutureTask<T>(task);
+			pending.add(future);
+			get().execute(future);
+			while (maxPending > 0 && pending.size() > maxPending) {
+				collect();
+			}
+		}
+
+		/**
+		 * Wait for all tasks.
+		 *
+		 * @return Task results in submission order.
+		 * @throws IOException Thrown by a task. Remaining tasks are cancelled.
+		 * @throws InterruptedException Remaining tasks are cancelled.
+		 */
+		List<T> join() throws IOException, InterruptedException {
+			while (!pending.isEmpty()) {
+				collect();
+			}
+			return results;
+		}
+
+		/**
+		 * Cancel all tasks not collected yet, interrupting running ones.
+		 */
+		void cancel() {
+			for (FutureTask<T> future : pending) {
+				future.cancel(true);
+			}
+			pending.clear();
+		}
+
+		private void collect() throws IOException, InterruptedException {
+			FutureTask<T> future = pending.getFirst();
+			boolean done = false;
+			try {
+				//No-op if a worker has already started it
+				future.run();
+				results.add(future.get());
+				pending.removeFirst();
+				done = true;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof InterruptedException) {
+					throw (InterruptedException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IOException(cause);
+			} finally {
+				if (!done) {
+					cancel();
+				}
+			}
+		}
+	}
+}
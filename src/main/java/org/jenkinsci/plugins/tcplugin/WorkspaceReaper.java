@@ -0,0 +1,299 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves outdated publisher output out of the way and deletes it in background,
+ * so the build never waits for recursive deletion of extracted results.
+ *
+ */
+public class WorkspaceReaper implements Constants {
+
+	private static final Logger LOGGER = Logger.getLogger(WorkspaceReaper.class.getName());
+
+	/**
+	 * Pause after every batch of deleted files, milliseconds. Keeps agent disk I/O low.
+	 */
+	public static long DELAY = Long.getLong(WorkspaceReaper.class.getName() + ".delay", 100);
+
+	/**
+	 * Number of deleted files in a batch.
+	 */
+	public static int BATCH_FILES = Integer.getInteger(WorkspaceReaper.class.getName() + ".batchFiles", 1000);
+
+	/**
+	 * Size of deleted files in a batch, bytes.
+	 */
+	public static long BATCH_BYTES = Long.getLong(WorkspaceReaper.class.getName() + ".batchBytes", 64L << 20);
+
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+
+	/**
+	 * Remote paths already queued for deletion.
+	 */
+	private static final Set<String> QUEUED = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * Create output directory of a single publish under the output root.
+	 * The first publish of a build gets <i>&lt;build number&gt;</i>, further ones of the same build
+	 * (e.g. from parallel Pipeline branches) get <i>&lt;build number&gt;-2</i>, <i>-3</i> and so on.
+	 * Directory is created on the node, so concurrent publishes never get the same one.
+	 *
+	 * @param workspace Job workspace.
+	 * @param build Build number.
+	 * @return Name of the created directory.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static String claim(FilePath workspace, int build) throws IOException, InterruptedException {
+		return workspace.act(new Claim(build));
+	}
+
+	/**
+	 * Move output of previous builds out of the output root to the trash folder.
+	 * Renaming is done on the node within one call and does not touch directory contents.
+	 *
+	 * @param workspace Job workspace.
+	 * @param build Current build number. Its output directories are kept.
+	 * @return true if anything was moved.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static boolean retire(FilePath workspace, int build) throws IOException, InterruptedException {
+		return workspace.act(new Retire(build));
+	}
+
+	/**
+	 * Queue deletion of everything in the trash folder of the workspace.
+	 * Returns immediately.
+	 *
+	 * @param workspace Job workspace.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public static void schedule(FilePath workspace) throws IOException, InterruptedException {
+
+		FilePath trash = workspace.child(MHT_PARSE_TRASH);
+		if (!trash.exists()) {
+			return;
+		}
+
+		for (final FilePath dir : trash.list()) {
+			if (!QUEUED.add(dir.getRemote())) {
+				continue;
+			}
+			EXECUTOR.submit(new Runnable() {
+				public void run() {
+					try {
+						dir.act(new Delete(BATCH_FILES, BATCH_BYTES, DELAY));
+					} catch (Exception e) {
+						//Will be queued again by the next publish in this workspace
+						LOGGER.log(Level.WARNING, "Failed to delete " + dir.getRemote(), e);
+					} finally {
+						QUEUED.remove(dir.getRemote());
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Delete a file or a directory tree, pausing after every batch of files.
+	 *
+	 * @param file File or directory to delete.
+	 * @param batchFiles Number of files in a batch.
+	 * @param batchBytes Size of files in a batch, bytes.
+	 * @param delay Pause after a batch, milliseconds.
+	 * @return Number of pauses made.
+	 * @throws IOException If anything cannot be deleted.
+	 * @throws InterruptedException
+	 */
+	static int delete(File file, int batchFiles, long batchBytes, long delay) throws IOException, InterruptedException {
+		long[] batch = new long[3];
+		delete(file, batchFiles, batchBytes, delay, batch);
+		return (int) batch[2];
+	}
+
+	/**
+	 * @param batch Files and bytes deleted in the current batch, number of pauses.
+	 */
+	private static void delete(File file, int batchFiles, long batchBytes, long delay, long[] batch)
+			throws IOException, InterruptedException {
+
+		//Links are deleted, not followed
+		File[] children = file.isDirectory() && !Util.isSymlink(file) ? file.listFiles() : null;
+		if (children != null) {
+			for (File child : children) {
+				delete(child, batchFiles, batchBytes, delay, batch);
+			}
+		}
+
+		long size = children == null ? file.length() : 0;
+		if (!file.delete() && file.exists()) {
+			throw new IOException("Failed to delete " + file);
+		}
+
+		batch[0]++;
+		batch[1] += size;
+		if (batch[0] >= batchFiles || batch[1] >= batchBytes) {
+			batch[0] = 0;
+			batch[1] = 0;
+			batch[2]++;
+			Thread.sleep(delay);
+		}
+	}
+
+	/**
+	 * Whether an output root entry belongs to the given build.
+	 */
+	private static boolean isOwnedBy(String name, int build) {
+		return name.matches(build + "(-\\d+)?");
+	}
+
+	/**
+	 * Deletes a trash entry on the node with pauses, see {@link WorkspaceReaper#DELAY}.
+	 */
+	private static final class Delete extends MasterToSlaveFileCallable<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int batchFiles;
+		private final long batchBytes;
+		private final long delay;
+
+		Delete(int batchFiles, long batchBytes, long delay) {
+			this.batchFiles = batchFiles;
+			this.batchBytes = batchBytes;
+			this.delay = delay;
+		}
+
+		public Void invoke(File file, VirtualChannel channel) throws IOException, InterruptedException {
+			delete(file, batchFiles, batchBytes, delay);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the first free output directory of a build.
+	 */
+	private static final class Claim extends MasterToSlaveFileCallable<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int build;
+
+		Claim(int build) {
+			this.build = build;
+		}
+
+		public String invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+
+			File root = new File(workspace, MHT_PARSE_DESTINATION);
+			if (!root.isDirectory() && !root.mkdirs() && !root.isDirectory()) {
+				throw new IOException("Failed to create " + root);
+			}
+
+			//mkdir is atomic: it fails if another publish has just created the same directory
+			String name = String.valueOf(build);
+			for (int i = 2; !new File(root, name).mkdir(); i++) {
+				if (i > 1000) {
+					throw new IOException("Failed to create output directory in " + root);
+				}
+				name = build + "-" + i;
+			}
+			return name;
+		}
+	}
+
+	/**
+	 * Renames outdated output directories to the trash folder.
+	 * Files of the old flat MHTParse layout are moved one by one,
+	 * as well as the old workspace-level JUnit report.
+	 */
+	private static final class Retire extends MasterToSlaveFileCallable<Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int build;
+
+		Retire(int build) {
+			this.build = build;
+		}
+
+		public Boolean invoke(File workspace, VirtualChannel channel) throws IOException, InterruptedException {
+
+			File root = new File(workspace, MHT_PARSE_DESTINATION);
+			File report = new File(workspace, JUNIR_REPORT);
+			File[] children = root.listFiles();
+			if (children == null && !report.exists()) {
+				return false;
+			}
+
+			File trash = new File(workspace, MHT_PARSE_TRASH);
+			if (!trash.isDirectory() && !trash.mkdirs() && !trash.isDirectory()) {
+				throw new IOException("Failed to create " + trash);
+			}
+			String suffix = "-" + System.currentTimeMillis();
+
+			//JUnit report of the old layout
+			if (report.exists()) {
+				move(report, new File(trash, report.getName() + suffix));
+			}
+			if (children == null) {
+				return true;
+			}
+
+			boolean moved = false;
+			for (File child : children) {
+				if (!isOwnedBy(child.getName(), build)) {
+					move(child, new File(trash, child.getName() + suffix));
+					moved = true;
+				}
+			}
+			return moved;
+		}
+
+		private static void move(File from, File to) throws IOException {
+			//May be already moved by a concurrent publish of the same build
+			if (!from.renameTo(to) && from.exists()) {
+				throw new IOException("Failed to move " + from + " to " + to);
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin.results;
+
+/**
+ * How the TestComplete log hierarchy is written as JUnit test suites.
+ *
+ */
+public enum SuiteLayout {
+
+	/**
+	 * One suite per top-level log item, all tests below it included. Class name keeps the full path.
+	 * Items whose class names differ in case only share a suite.
+	 */
+	FLAT("One suite per top-level item"),
+
+	/**
+	 * One suite per log item with tests, named by its full dotted path.
+	 */
+	QUALIFIED("One suite per item, fully qualified names"),
+
+	/**
+	 * Suites nested as log items are, with counts and times of everything below.
+	 */
+	NESTED("Nested suites");
+
+	private final String description;
+
+	SuiteLayout(String description) {
+		this.description = description;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+}
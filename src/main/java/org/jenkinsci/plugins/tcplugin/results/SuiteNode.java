@@ -0,0 +1,259 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin.results;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node of TestComplete log hierarchy, e.g. project suite, project or folder of test items.
+ * Nodes with a common path prefix share their parent nodes, children are looked up by name.
+ * Counts and times of the whole subtree are calculated once by {@link #aggregate()}.
+ *
+ */
+public class SuiteNode {
+
+	private final String name;
+	private final SuiteNode parent;
+	private final Map<String, SuiteNode> children = new LinkedHashMap<String, SuiteNode>();
+	private final List<TestResult> tests = new ArrayList<TestResult>();
+
+	private List<String> path;
+	private String className;
+
+	private int total;
+	private int failed;
+	private long time;
+
+	/**
+	 * Root node. It stands for the top log item, which is not a part of class names.
+	 */
+	public SuiteNode() {
+		this("", null);
+	}
+
+	private SuiteNode(String name, SuiteNode parent) {
+		this.name = name;
+		this.parent = parent;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isRoot() {
+		return parent == null;
+	}
+
+	/**
+	 * Get child node, create it if there is none.
+	 *
+	 * @param name Name of the log item.
+	 * @return Child node.
+	 */
+	public SuiteNode child(String name) {
+		SuiteNode child = children.get(name);
+		if (child == null) {
+			child = new SuiteNode(name, this);
+			children.put(name, child);
+		}
+		return child;
+	}
+
+	public Collection<SuiteNode> getChildren() {
+		return Collections.unmodifiableCollection(children.values());
+	}
+
+	/**
+	 * Add test result of a test item directly below this node.
+	 *
+	 * @param test Test result.
+	 */
+	public void addTest(TestResult test) {
+		tests.add(test);
+	}
+
+	public List<TestResult> getTests() {
+		return Collections.unmodifiableList(tests);
+	}
+
+	/**
+	 * @return Names of the nodes from the top one to this one, as written in the log. Shared by all tests of the node.
+	 */
+	public List<String> getPath() {
+		if (path == null) {
+			List<String> result = isRoot() ? new ArrayList<String>() : new ArrayList<String>(parent.getPath());
+			if (!isRoot()) {
+				result.add(name);
+			}
+			path = Collections.unmodifiableList(result);
+		}
+		return path;
+	}
+
+	/**
+	 * @return Names of the nodes from the top one to this one separated with "." symbol, spaces replaced.
+	 */
+	public String getClassName() {
+		if (className == null) {
+			if (isRoot()) {
+				className = "";
+			} else if (parent.isRoot()) {
+				className = sanitize(name);
+			} else {
+				className = parent.getClassName() + "." + sanitize(name);
+			}
+		}
+		return className;
+	}
+
+	private static String sanitize(String name) {
+		return name.replace(" ", "_").trim();
+	}
+
+	/**
+	 * Calculate counts and times of every node of the subtree, bottom-up.
+	 */
+	public void aggregate() {
+		total = tests.size();
+		failed = 0;
+		time = 0;
+		for (TestResult test : tests) {
+			time += test.getTime();
+			if (test.isFailed()) {
+				failed++;
+			}
+		}
+		for (SuiteNode child : children.values()) {
+			child.aggregate();
+			total += child.total;
+			failed += child.failed;
+			time += child.time;
+		}
+	}
+
+	/**
+	 * @return Number of tests in the subtree. Valid after {@link #aggregate()}.
+	 */
+	public int getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return Number of failed tests in the subtree. Valid after {@link #aggregate()}.
+	 */
+	public int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return Time of tests in the subtree. Valid after {@link #aggregate()}.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Add tests of the subtree to the list, depth-first.
+	 *
+	 * @param result List to add to.
+	 */
+	public void collectTests(List<TestResult> result) {
+		result.addAll(tests);
+		for (SuiteNode child : children.values()) {
+			child.collectTests(result);
+		}
+	}
+
+	/**
+	 * Write the subtree as suites of the given layout. Flat layout is written by {@link TestSuiteResult}.
+	 *
+	 * @param out Output.
+	 * @param layout {@link SuiteLayout#QUALIFIED} or {@link SuiteLayout#NESTED}.
+	 */
+	public void appendXml(StringBuilder out, SuiteLayout layout) {
+		if (layout == SuiteLayout.NESTED) {
+			appendNestedXml(out, "\t");
+		} else {
+			appendQualifiedXml(out);
+		}
+	}
+
+	private void appendQualifiedXml(StringBuilder out) {
+		if (!tests.isEmpty()) {
+			appendOwnSuite(out, "\t", getClassName());
+		}
+		for (SuiteNode child : children.values()) {
+			child.appendQualifiedXml(out);
+		}
+	}
+
+	private void appendNestedXml(StringBuilder out, String indent) {
+		if (isRoot()) {
+			//Tests right below the top log item get a suite of their own
+			if (!tests.isEmpty()) {
+				appendOwnSuite(out, indent, "");
+			}
+			for (SuiteNode child : children.values()) {
+				child.appendNestedXml(out, indent);
+			}
+			return;
+		}
+		appendSuiteStart(out, indent, name, total, failed, time);
+		for (TestResult test : tests) {
+			out.append(test.getTestResultXml());
+		}
+		for (SuiteNode child : children.values()) {
+			child.appendNestedXml(out, indent + "\t");
+		}
+		out.append(indent).append("</testsuite>\n");
+	}
+
+	/**
+	 * Write tests directly below this node as a suite.
+	 */
+	private void appendOwnSuite(StringBuilder out, String indent, String suiteName) {
+		long own = 0;
+		int ownFailed = 0;
+		for (TestResult test : tests) {
+			own += test.getTime();
+			ownFailed += test.isFailed() ? 1 : 0;
+		}
+		appendSuiteStart(out, indent, suiteName, tests.size(), ownFailed, own);
+		for (TestResult test : tests) {
+			out.append(test.getTestResultXml());
+		}
+		out.append(indent).append("</testsuite>\n");
+	}
+
+	private static void appendSuiteStart(StringBuilder out, String indent, String name, int tests, int failures, long time) {
+		out.append(indent).append("<testsuite name=\"").append(TestResult.escapeXml(name))
+				.append("\" tests=\"").append(tests)
+				.append("\" failures=\"").append(failures)
+				.append("\" time=\"").append(time).append("\">\n");
+	}
+}
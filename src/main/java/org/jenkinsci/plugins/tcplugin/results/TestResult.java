@@ -22,6 +22,9 @@
  */
 package org.jenkinsci.plugins.tcplugin.results;
 
+import java.util.Collections;
+import java.util.List;
+
 
 /**
  * Simple test result object.
@@ -36,13 +39,16 @@ public class TestResult {
 	private long time;
 	private String failureType;
 	private String failureDetails;
+	private List<String> messages = Collections.emptyList();
+	private List<String> path = Collections.emptyList();
+	private String systemOut = "";
 
 
 	/** Test result basic constructor.
 	 * 
 	 * @param classname Test Case classname.
 	 * @param name Test Case name.
-	 * @param time Time spent in milliseconds.
+	 * @param time Time spent in seconds.
 	 * @param failureType Test failure type (if any).
 	 * @param failureDetails Test failure details (if any).
 	 */
@@ -63,7 +69,7 @@ public class TestResult {
 	 * 
 	 * @param classname Test Case classname.
 	 * @param name Test Case name.
-	 * @param time Time spent in milliseconds.
+	 * @param time Time spent in seconds.
 	 */
 	public TestResult(String classname,
 			String name,
@@ -84,6 +90,79 @@ public class TestResult {
 		return this.time;
 	}
 
+	/** Classname getter.
+	 * 
+	 * @return Test Case classname.
+	 */
+	public String getClassname() {
+		return this.classname;
+	}
+
+	/** Name getter.
+	 * 
+	 * @return Test Case name.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/** Failure details getter.
+	 * 
+	 * @return Test failure details. Empty if test passed.
+	 */
+	public String getFailureDetails() {
+		return this.failureDetails;
+	}
+
+	/** Whether the test failed.
+	 * 
+	 * @return true if failure type or details are set.
+	 */
+	public boolean isFailed() {
+		return !failureType.equals("") || !failureDetails.equals("");
+	}
+
+	/** All log messages of the test, e.g. to index them.
+	 * 
+	 * @return Log messages. May be empty.
+	 */
+	public List<String> getMessages() {
+		return this.messages;
+	}
+
+	/** Log messages setter.
+	 * 
+	 * @param messages Log messages of the test.
+	 */
+	public void setMessages(List<String> messages) {
+		this.messages = messages;
+	}
+
+	/** Names of the log items from the top one to the parent of the test, as written in the log.
+	 * Unlike classname, names are not sanitized, e.g. to select the test on the command line.
+	 * 
+	 * @return Log item names. May be empty.
+	 */
+	public List<String> getPath() {
+		return this.path;
+	}
+
+	/** Path setter.
+	 * 
+	 * @param path Log item names.
+	 */
+	public void setPath(List<String> path) {
+		this.path = path;
+	}
+
+	/** System output setter, e.g. to tag the test as a retry.
+	 * 
+	 * @param systemOut Text of system-out element.
+	 */
+	public void setSystemOut(String systemOut) {
+		this.systemOut = systemOut;
+	}
+
 	/** suiteName getter for test suite name definition.
 	 * 
 	 * @return Name value for TestSuiteResult.
@@ -101,19 +180,59 @@ public class TestResult {
 	 */
 	public String getTestResultXml() {
 
-		String result = "";
+		StringBuilder result = new StringBuilder();
 
-		result += "\t\t<testcase classname=\"" + this.classname + "\" name=\"" + this.name + "\" time=\"" + this.time + "\"";
+		result.append("\t\t<testcase classname=\"").append(escapeXml(this.classname))
+				.append("\" name=\"").append(escapeXml(this.name))
+				.append("\" time=\"").append(this.time).append("\"");
 
-		if (!failureType.equals("") || !failureDetails.equals("")) {	
-			result += ">\n";
-			result += "\t\t\t<failure type=\"" + failureType + "\" message=\"" + failureDetails +"\"/>\n";    	
-			result += "\t\t</testcase>\n";
+		if (isFailed() || systemOut.length() != 0) {	
+			result.append(">\n");
+			if (isFailed()) {
+				result.append("\t\t\t<failure type=\"").append(escapeXml(failureType))
+						.append("\" message=\"").append(escapeXml(failureDetails)).append("\"/>\n");
+			}
+			if (systemOut.length() != 0) {
+				result.append("\t\t\t<system-out><![CDATA[").append(systemOut).append("]]></system-out>\n");
+			}
+			result.append("\t\t</testcase>\n");
 		} else {
-			result += "/>\n";	
+			result.append("/>\n");	
 		}
 
-		return result;	
+		return result.toString();	
+	}
+
+	/** Escape text to write it as an XML attribute value.
+	 * 
+	 * @param value Text, e.g. a log item name.
+	 * @return Escaped text.
+	 */
+	public static String escapeXml(String value) {
+		StringBuilder result = null;
+		for (int i = 0; i < value.length(); i++) {
+			char ch = value.charAt(i);
+			String entity;
+			switch (ch) {
+			case '&': entity = "&amp;"; break;
+			case '<': entity = "&lt;"; break;
+			case '>': entity = "&gt;"; break;
+			case '"': entity = "&quot;"; break;
+			case '\'': entity = "&apos;"; break;
+			default: entity = null;
+			}
+			if (entity != null && result == null) {
+				result = new StringBuilder(value.length() + 16).append(value, 0, i);
+			}
+			if (result != null) {
+				if (entity != null) {
+					result.append(entity);
+				} else {
+					result.append(ch);
+				}
+			}
+		}
+		return result == null ? value : result.toString();
 	}
 	
 }
@@ -23,6 +23,7 @@
 package org.jenkinsci.plugins.tcplugin.results;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -83,6 +84,14 @@ public class TestSuiteResult {
 		this.testResults.add(testResult);
 	}
 
+	/** Test results getter.
+	 * 
+	 * @return Test results of the suite. Read-only.
+	 */
+	public List<TestResult> getTestResults() {
+		return Collections.unmodifiableList(this.testResults);
+	}
+
 	/** Calculates test suit time as a sum of test case times
 	 * 
 	 * @return Test suit time
@@ -103,19 +112,20 @@ public class TestSuiteResult {
 	 */
 	public String getTestSuitResultXml() {
 
-		String result = "";
+		StringBuilder result = new StringBuilder();
 
-		result += "\t<testsuite name=\"" + 
-				(this.name.equals("") ? "" : this.name) + "\" tests=\"" + testResults.size() + "\" time=\"" + 
-				(this.time == 0 ? sumTime() : this.time) + "\">\n"; //if time is not set, try calculating from test results
+		result.append("\t<testsuite name=\"").append(TestResult.escapeXml(this.name))
+				.append("\" tests=\"").append(testResults.size())
+				.append("\" time=\"").append(this.time == 0 ? sumTime() : this.time) //if time is not set, try calculating from test results
+				.append("\">\n");
 
 		for (int i = 0; i < testResults.size(); i++) {
-			result += testResults.get(i).getTestResultXml();
+			result.append(testResults.get(i).getTestResultXml());
 		}
 
-		result += "\t</testsuite>\n";
+		result.append("\t</testsuite>\n");
 
-		return result;
+		return result.toString();
 	}
 
 }
@@ -0,0 +1,73 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Rewriting of image links while a report part is written.
+ *
+ */
+public class LinkRewritingWriterTest {
+
+	private static String rewrite(String text, int chunk) throws IOException {
+		StringWriter result = new StringWriter();
+		Writer writer = new ReplacingWriter(result, "http://localhost", ".");
+		writer = new LinkRewritingWriter(writer, "http://localhost/", ".png", "../tc-screenshots/");
+		for (int i = 0; i < text.length(); i += chunk) {
+			writer.write(text, i, Math.min(chunk, text.length() - i));
+		}
+		writer.close();
+		return result.toString();
+	}
+
+	@Test
+	public void pointsImagesToTheStore() throws Exception {
+		String text = "<Picture href=\"http://localhost/shot1.PNG\"/><a href=\"http://localhost/log.xml\">"
+				+ "<img src='http://localhost/sub/shot2.png'/><x>http://localhost/shot3.png.xml</x>";
+		String expected = "<Picture href=\"../tc-screenshots/shot1.PNG\"/><a href=\"./log.xml\">"
+				+ "<img src='./sub/shot2.png'/><x>./shot3.png.xml</x>";
+		for (int chunk = 1; chunk <= text.length(); chunk++) {
+			assertEquals("chunk " + chunk, expected, rewrite(text, chunk));
+		}
+	}
+
+	@Test
+	public void keepsPartialPrefix() throws Exception {
+		assertEquals("http://local", rewrite("http://local", 3));
+		assertEquals("./http://localhos", rewrite("http://localhost/http://localhos", 5));
+		assertEquals("../tc-screenshots/a.png", rewrite("http://localhost/a.png", 4));
+		assertEquals("http:http://x", rewrite("http:http://x", 2));
+	}
+
+	@Test
+	public void keepsNameOnlyLinks() throws Exception {
+		assertEquals("./.png ./", rewrite("http://localhost/.png http://localhost/", 7));
+	}
+}
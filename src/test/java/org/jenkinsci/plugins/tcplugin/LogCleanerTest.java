@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Folders of a project suite and deletion of TestComplete leftovers there.
+ *
+ */
+public class LogCleanerTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final TaskListener LISTENER = new TaskListener() {
+		private static final long serialVersionUID = 1L;
+		private final PrintStream logger = new PrintStream(new NullOutputStream());
+		public PrintStream getLogger() {
+			return logger;
+		}
+		public PrintWriter error(String s) {
+			return new PrintWriter(logger);
+		}
+	};
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private File suite(File workspace, File absolute) throws IOException {
+		File suite = new File(workspace, "tests/Suite/Suite.pjs");
+		write(suite, "<Root>\n"
+				+ "<prp name=\"filename\" type=\"S\" value=\"Orders\\Orders.mds\"/>\n"
+				+ "<prp name=\"filename\" type=\"S\" value=\"../Shared/Login/Login.mds\"/>\n"
+				+ "<prp name=\"filename\" type=\"S\" value=\"" + absolute.getPath() + "\"/>\n"
+				+ "<prp name=\"description\" type=\"S\" value=\"Orders\"/>\n"
+				+ "</Root>\n");
+		return suite;
+	}
+
+	@Test
+	public void findsFoldersOfTheSuiteProjects() throws Exception {
+		File workspace = tmp.newFolder("ws");
+		File external = new File(tmp.getRoot(), "external/External.mds");
+		suite(workspace, external);
+
+		List<File> roots = new ArrayList<File>(LogCleaner.getRoots(workspace, "tests\\Suite\\Suite.pjs"));
+		assertEquals(Arrays.asList(
+				new File(workspace, "tests/Suite"),
+				new File(workspace, "tests/Suite/Orders"),
+				new File(workspace, "tests/Suite/../Shared/Login"),
+				external.getParentFile()), roots);
+
+		assertEquals(new File(workspace, "tests/Suite/Orders/Log"),
+				LogCleaner.getLogDirs(workspace, "tests/Suite/Suite.pjs").get(1));
+	}
+
+	@Test
+	public void findsFolderOfASingleProject() throws Exception {
+		File workspace = tmp.newFolder("ws");
+		assertEquals(Arrays.asList(new File(workspace, "Orders")),
+				new ArrayList<File>(LogCleaner.getRoots(workspace, "Orders/Orders.mds")));
+	}
+
+	@Test
+	public void deletesLogsAndExtenders() throws Exception {
+		File workspace = tmp.newFolder("ws");
+		suite(workspace, new File(tmp.getRoot(), "external/External.mds"));
+		write(new File(workspace, "tests/Suite/Log/run1/root.xml"), "<LogData/>");
+		write(new File(workspace, "tests/Suite/Orders/Log/run1/a.xml"), "<Log/>");
+		write(new File(workspace, "tests/Suite/Orders/Orders.tcCfgExtender"), "");
+		write(new File(workspace, "tests/Suite/Orders/Scripts/Unit1.js"), "");
+		write(new File(workspace, "other/Log/keep.xml"), "");
+
+		List<String> logs = LogCleaner.deleteLogs(new FilePath(workspace), "tests/Suite/Suite.pjs", LISTENER);
+		assertEquals(2, logs.size());
+		assertFalse(new File(workspace, "tests/Suite/Log").exists());
+		assertFalse(new File(workspace, "tests/Suite/Orders/Log").exists());
+		assertTrue(new File(workspace, "tests/Suite/Orders/Scripts/Unit1.js").exists());
+		assertTrue(new File(workspace, "other/Log/keep.xml").exists());
+
+		List<String> extenders = LogCleaner.deleteExtenders(new FilePath(workspace), "tests/Suite/Suite.pjs", LISTENER);
+		assertEquals(1, extenders.size());
+		assertFalse(new File(workspace, "tests/Suite/Orders/Orders.tcCfgExtender").exists());
+	}
+}
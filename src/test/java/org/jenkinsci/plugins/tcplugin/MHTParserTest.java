@@ -0,0 +1,177 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import hudson.FilePath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Decomposition of a .mht file with links rewritten as the publisher does.
+ *
+ */
+public class MHTParserTest {
+
+	private static final String BOUNDARY = "----=_NextPart_000_0000";
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static void part(Writer out, String type, String encoding, String name, String content) throws IOException {
+		out.write("--" + BOUNDARY + "\r\n");
+		out.write("Content-Type: " + type + ";\r\n");
+		out.write("\tcharset=\"utf-8\"\r\n");
+		out.write("Content-Transfer-Encoding: " + encoding + "\r\n");
+		out.write("Content-Location: http://localhost/" + name + "\r\n\r\n");
+		out.write(content + "\r\n\r\n");
+	}
+
+	private static byte[] read(File file) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				result.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return result.toByteArray();
+	}
+
+	@Test
+	public void rewritesLinksOfEveryTextEncoding() throws Exception {
+		String log = "<Log><Picture href=\"http://localhost/shot1.png\"/><a href=\"http://localhost/root.xml\"/></Log>";
+		byte[] image = new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, 1, 2 };
+
+		File mht = tmp.newFile("log.mht");
+		Writer out = new OutputStreamWriter(new FileOutputStream(mht), "US-ASCII");
+		try {
+			out.write("MIME-Version: 1.0\r\n");
+			out.write("Content-Type: multipart/related;\r\n");
+			out.write("\tboundary=\"" + BOUNDARY + "\"\r\n\r\n");
+			part(out, "text/html", "quoted-printable", "index.htm", "<a href=3D\"http://localhost/root.xml\">Log</a>");
+			part(out, "text/xml", "base64", "test_TestLog.xml", DatatypeConverter.printBase64Binary(log.getBytes("UTF-8")));
+			out.write("--" + BOUNDARY + "\r\n");
+			out.write("Content-Type: image/png\r\n");
+			out.write("Content-Transfer-Encoding: base64\r\n");
+			out.write("Content-Location: http://localhost/shot1.png\r\n\r\n");
+			out.write(DatatypeConverter.printBase64Binary(image) + "\r\n\r\n");
+			out.write("--" + BOUNDARY + "--\r\n");
+		} finally {
+			out.close();
+		}
+
+		File output = tmp.newFolder("output");
+		MHTParser parser = new MHTParser(new FilePath(mht), new FilePath(output));
+		for (String type : new String[] { "text/html", "text/xml" }) {
+			parser.addRewrite(type, "http://localhost", ".");
+			parser.addLinkRewrite(type, "http://localhost/", ".png", "../tc-screenshots/");
+		}
+		parser.decompress();
+
+		assertEquals("<Log><Picture href=\"../tc-screenshots/shot1.png\"/><a href=\"./root.xml\"/></Log>",
+				new String(read(new File(output, "test_TestLog.xml")), "UTF-8"));
+		assertEquals("<a href=3D\"./root.xml\">Log</a>", new String(read(new File(output, "index.htm")), "UTF-8").trim());
+		assertArrayEquals(image, read(new File(output, "shot1.png")));
+	}
+
+	@Test
+	public void failsWhenPartCannotBeWritten() throws Exception {
+		String[][] parts = {
+				{ "text/html", "quoted-printable", "index.htm", "<html/>" },
+				{ "image/png", "base64", "shot1.png", DatatypeConverter.printBase64Binary(new byte[] { 1, 2 }) } };
+		for (String[] p : parts) {
+			File mht = tmp.newFile(p[2] + ".mht");
+			Writer out = new OutputStreamWriter(new FileOutputStream(mht), "US-ASCII");
+			try {
+				out.write("MIME-Version: 1.0\r\n");
+				out.write("Content-Type: multipart/related;\r\n");
+				out.write("\tboundary=\"" + BOUNDARY + "\"\r\n\r\n");
+				part(out, p[0], p[1], p[2], p[3]);
+				out.write("--" + BOUNDARY + "--\r\n");
+			} finally {
+				out.close();
+			}
+
+			//A file in place of the output folder, so no part can be created
+			File output = tmp.newFile(p[2] + ".out");
+			try {
+				new MHTParser(new FilePath(mht), new FilePath(output)).decompress();
+				fail("Failed write of " + p[2] + " must fail the decomposition");
+			} catch (IOException e) {
+				//expected
+			}
+		}
+	}
+
+	@Test
+	public void renamedPartsKeepLinkedNames() throws Exception {
+		String log = "<Log><Picture href=\"http://localhost/shot1.png\"/></Log>";
+
+		File mht = tmp.newFile("names.mht");
+		Writer out = new OutputStreamWriter(new FileOutputStream(mht), "US-ASCII");
+		try {
+			out.write("MIME-Version: 1.0\r\n");
+			out.write("Content-Type: multipart/related;\r\n");
+			out.write("\tboundary=\"" + BOUNDARY + "\"\r\n\r\n");
+			part(out, "text/xml", "quoted-printable", "test_TestLog.xml", log);
+			part(out, "image/png", "base64", "shot.png", DatatypeConverter.printBase64Binary(new byte[] { 1 }));
+			part(out, "image/png", "base64", "shot.png", DatatypeConverter.printBase64Binary(new byte[] { 2 }));
+			part(out, "image/png", "base64", "shot1.png", DatatypeConverter.printBase64Binary(new byte[] { 3 }));
+			out.write("--" + BOUNDARY + "--\r\n");
+		} finally {
+			out.close();
+		}
+
+		File output = tmp.newFolder("names");
+		MHTParser parser = new MHTParser(new FilePath(mht), new FilePath(output));
+		parser.addLinkRewrite("text/xml", "http://localhost/", ".png", "/job/x/1/tc-screenshots/");
+		parser.decompress();
+
+		//Link and stored name of the linked screenshot stay the same, the duplicate is renamed aside
+		assertEquals("<Log><Picture href=\"/job/x/1/tc-screenshots/shot1.png\"/></Log>",
+				new String(read(new File(output, "test_TestLog.xml")), "UTF-8").trim());
+		assertArrayEquals(new byte[] { 1 }, read(new File(output, "shot.png")));
+		assertArrayEquals(new byte[] { 2 }, read(new File(output, "shot~1.png")));
+		assertArrayEquals(new byte[] { 3 }, read(new File(output, "shot1.png")));
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.slaves.DumbSlave;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * End-to-end scalability suite of {@link TestCompletePublisher}.
+ * Publishes generated reports of increasing size on an agent and records
+ * wall time, peak heap and bytes transferred from the agent for each size.
+ * <p>
+ * Not a part of the regular build, run with <i>mvn test -Pscalability</i>.
+ * Sizes are set with <i>-Dscalability.sizes=1000,10000,100000</i>,
+ * results are written to <i>target/scalability.csv</i>.
+ * <p>
+ * Cost per test must stay roughly flat: time and agent bytes per test of the
+ * largest size may be at most <i>-Dscalability.maxGrowth</i> (default 3) times
+ * those of the smallest size.
+ *
+ */
+public class PublisherScalability {
+
+	private static final String SIZES = System.getProperty("scalability.sizes", "1000,10000,100000");
+	private static final double MAX_GROWTH = Double.parseDouble(System.getProperty("scalability.maxGrowth", "3"));
+	private static final String REPORT = "result.mht";
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	private static PrintWriter csv;
+
+	@BeforeClass
+	public static void openResults() throws IOException {
+		TestCompletePublisher.SKIP_NODE_CHECK = true;
+		File file = new File("target", "scalability.csv");
+		file.getParentFile().mkdirs();
+		csv = new PrintWriter(new FileWriter(file));
+		csv.println("tests,result,wallMillis,peakHeapBytes,agentBytes,parseMillis,xmlMillis,publishMillis");
+	}
+
+	@AfterClass
+	public static void closeResults() {
+		TestCompletePublisher.SKIP_NODE_CHECK = false;
+		if (csv != null) {
+			csv.close();
+		}
+	}
+
+	@Test
+	public void publish() throws Exception {
+		int smallest = Integer.MAX_VALUE;
+		int largest = 0;
+		long[] smallestCost = null;
+		long[] largestCost = null;
+		for (String size : SIZES.split(",")) {
+			int tests = Integer.parseInt(size.trim());
+			long[] cost = publish(tests);
+			if (tests < smallest) {
+				smallest = tests;
+				smallestCost = cost;
+			}
+			if (tests > largest) {
+				largest = tests;
+				largestCost = cost;
+			}
+		}
+		if (largest > smallest) {
+			assertLinear("wall time", smallest, smallestCost[0], largest, largestCost[0]);
+			assertLinear("agent bytes", smallest, smallestCost[1], largest, largestCost[1]);
+		}
+	}
+
+	private static void assertLinear(String what, int smallest, long smallestCost, int largest, long largestCost) {
+		double small = (double) Math.max(smallestCost, 1) / smallest;
+		double large = (double) largestCost / largest;
+		assertTrue(what + " per test grows from " + small + " at " + smallest + " tests to " + large
+				+ " at " + largest + " tests", large <= small * MAX_GROWTH);
+	}
+
+	/**
+	 * @return Wall time, ms and bytes transferred from the agent.
+	 */
+	private long[] publish(int tests) throws Exception {
+
+		final File report = File.createTempFile("tc-scalability", ".mht");
+		try {
+			new ReportGenerator().tests(tests).write(report);
+
+			DumbSlave agent = j.createOnlineSlave();
+			FreeStyleProject project = j.createFreeStyleProject("scalability-" + tests);
+			project.setAssignedNode(agent);
+			project.getBuildersList().add(new TestBuilder() {
+				@Override
+				public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+						throws InterruptedException, IOException {
+					build.getWorkspace().child(REPORT).copyFrom(new FilePath(report));
+					return true;
+				}
+			});
+			project.getPublishersList().add(new TestCompletePublisher(REPORT, true, true, false, true));
+
+			System.gc();
+			resetPeakHeap();
+			long start = System.currentTimeMillis();
+			FreeStyleBuild build = project.scheduleBuild2(0).get();
+			long wall = System.currentTimeMillis() - start;
+			long heap = getPeakHeap();
+
+			Result result = build.getResult();
+			assertTrue(j.getLog(build), result.isBetterOrEqualTo(Result.UNSTABLE));
+
+			MetricsAction metrics = build.getAction(MetricsAction.class);
+			assertNotNull(metrics);
+
+			//Parser reads the report and writes parts through the agent channel
+			long agentBytes = metrics.getBytesRead() + metrics.getBytesWritten();
+
+			csv.println(tests + "," + result + "," + wall + "," + heap + "," + agentBytes + ","
+					+ getStageTime(metrics, "Decompress") + ","
+					+ getStageTime(metrics, "JUnit xml") + ","
+					+ getStageTime(metrics, "JUnit publish"));
+			csv.flush();
+			System.out.println("----> " + tests + " tests: " + wall + " ms, peak heap "
+					+ (heap >> 20) + " MB, " + (agentBytes >> 10) + " KB from agent");
+			return new long[] {wall, agentBytes};
+		} finally {
+			report.delete();
+		}
+	}
+
+	private static long getStageTime(MetricsAction metrics, String stage) {
+		for (MetricsAction.Counter counter : metrics.getStageTimes()) {
+			if (counter.getName().equals(stage)) {
+				return counter.getValue();
+			}
+		}
+		return -1;
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Sum of heap pool peaks since the last reset. Pools peak at different moments,
+	 * so this is an upper bound, good enough to compare sizes.
+	 */
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
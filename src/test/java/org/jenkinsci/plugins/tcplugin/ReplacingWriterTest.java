@@ -0,0 +1,87 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+/**
+ * Replacement of a literal string, whatever chunks the text is written in.
+ *
+ */
+public class ReplacingWriterTest {
+
+	private static String replace(String text, String what, String with, int chunk) throws IOException {
+		StringWriter result = new StringWriter();
+		Writer writer = new ReplacingWriter(result, what, with);
+		for (int i = 0; i < text.length(); i += chunk) {
+			writer.write(text.toCharArray(), i, Math.min(chunk, text.length() - i));
+			//Partial match is held back over a flush
+			writer.flush();
+		}
+		writer.close();
+		return result.toString();
+	}
+
+	private static void assertReplaced(String expected, String text, String what, String with) throws IOException {
+		for (int chunk = 1; chunk <= text.length(); chunk++) {
+			assertEquals("chunk " + chunk, expected, replace(text, what, with, chunk));
+		}
+	}
+
+	@Test
+	public void replacesMatchesSplitBetweenWrites() throws Exception {
+		assertReplaced("<a href=\"./root.xml\"/><b src=\"./x.png\"/>",
+				"<a href=\"http://localhost/root.xml\"/><b src=\"http://localhost/x.png\"/>", "http://localhost", ".");
+	}
+
+	@Test
+	public void restartsAfterPartialMatch() throws Exception {
+		assertReplaced("a-X-b", "a-aab-b", "aab", "X");
+		assertReplaced("aX", "aaab", "aab", "X");
+		assertReplaced("abaX", "abaabab", "abab", "X");
+		assertReplaced("http://localhosX", "http://localhoshttp://localhost", "http://localhost", "X");
+	}
+
+	@Test
+	public void writesPartialMatchOnClose() throws Exception {
+		assertReplaced("text http://local", "text http://local", "http://localhost", ".");
+		assertReplaced("XX", "abab", "ab", "X");
+	}
+
+	@Test
+	public void writesStringsAndCharacters() throws Exception {
+		StringWriter result = new StringWriter();
+		Writer writer = new ReplacingWriter(result, "http://localhost", ".");
+		writer.write("see http://loc");
+		writer.write('a');
+		writer.write("lhost/a.xml", 0, 7);
+		writer.close();
+		assertEquals("see ./a", result.toString());
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * .mht artifacts dropped by report compaction.
+ *
+ */
+public class ReportCompactorTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static File touch(File file) throws IOException {
+		file.getParentFile().mkdirs();
+		file.createNewFile();
+		return file;
+	}
+
+	@Test
+	public void dropsOnlyRecordedArtifacts() throws IOException {
+		File build = tmp.newFolder("build");
+		File artifacts = new File(build, "archive");
+		File recorded = touch(new File(artifacts, "Logs/result.mht"));
+		touch(new File(artifacts, "other.mht"));
+
+		ReportCompactor.addArtifact(build, "Logs\\result.mht");
+		ReportCompactor.addArtifact(build, "Logs/result.mht");
+
+		assertEquals(Arrays.asList(recorded), ReportCompactor.getMhtFiles(build, artifacts));
+	}
+
+	@Test
+	public void skipsPathsOutsideArtifacts() throws IOException {
+		File build = tmp.newFolder("build");
+		File artifacts = new File(build, "archive");
+		touch(new File(build, "outside.mht"));
+		touch(new File(artifacts, "log.txt"));
+
+		ReportCompactor.addArtifact(build, "../outside.mht");
+		ReportCompactor.addArtifact(build, "log.txt");
+
+		assertEquals(0, ReportCompactor.getMhtFiles(build, artifacts).size());
+	}
+
+	@Test
+	public void dropsNothingWithoutRecord() throws IOException {
+		File build = tmp.newFolder("build");
+		touch(new File(build, "archive/result.mht"));
+
+		assertEquals(0, ReportCompactor.getMhtFiles(build, new File(build, "archive")).size());
+	}
+}
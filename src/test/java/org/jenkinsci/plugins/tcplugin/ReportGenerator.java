@@ -0,0 +1,210 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * Generates a TestComplete .mht report with the given number of tests.
+ * Every test has its own _TestLog.xml part, some of them also have a screenshot.
+ * Same parameters always give the same file.
+ * <p>
+ * Shared by the scalability suite and the JMH benchmarks (through the test jar).
+ *
+ */
+public class ReportGenerator {
+
+	private static final String BOUNDARY = "----=_NextPart_000_0000_01D00000.00000000";
+	private static final int LINE_LENGTH = 76;
+	private static final int GROUP_SIZE = 100;
+
+	private int tests = 100;
+	private double failureRatio = 0.1;
+	private double screenshotRatio = 0.1;
+	private int imageSize = 2048;
+	private int messages = 5;
+	private long seed = 42;
+
+	/**
+	 * @param tests Number of tests.
+	 */
+	public ReportGenerator tests(int tests) {
+		this.tests = tests;
+		return this;
+	}
+
+	/**
+	 * @param failureRatio Share of failed tests.
+	 */
+	public ReportGenerator failureRatio(double failureRatio) {
+		this.failureRatio = failureRatio;
+		return this;
+	}
+
+	/**
+	 * @param screenshotRatio Share of tests with a screenshot (base64 encoded part).
+	 */
+	public ReportGenerator screenshotRatio(double screenshotRatio) {
+		this.screenshotRatio = screenshotRatio;
+		return this;
+	}
+
+	/**
+	 * @param imageSize Decoded size of each screenshot, bytes.
+	 */
+	public ReportGenerator imageSize(int imageSize) {
+		this.imageSize = imageSize;
+		return this;
+	}
+
+	/**
+	 * @param messages Number of messages in each test log, sets the size of quoted-printable parts.
+	 */
+	public ReportGenerator messages(int messages) {
+		this.messages = messages;
+		return this;
+	}
+
+	public ReportGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Write .mht file.
+	 *
+	 * @param file File to create.
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+
+		Random random = new Random(seed);
+		boolean[] failed = new boolean[tests];
+		for (int i = 0; i < tests; i++) {
+			failed[i] = random.nextDouble() < failureRatio;
+		}
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"));
+		try {
+			out.write("From: <Saved by TestComplete>\r\n");
+			out.write("Subject: Test Log\r\n");
+			out.write("MIME-Version: 1.0\r\n");
+			out.write("Content-Type: multipart/related;\r\n");
+			out.write("\ttype=\"text/html\";\r\n");
+			out.write("\tboundary=\"" + BOUNDARY + "\"\r\n\r\n");
+
+			writePart(out, "text/html", "index.htm",
+					"<html><body><a href=\"http://localhost/root.xml\">Log</a></body></html>");
+			writePart(out, "text/xml", "root.xml", getRoot(failed));
+
+			for (int i = 0; i < tests; i++) {
+				boolean screenshot = random.nextDouble() < screenshotRatio;
+				StringBuilder log = new StringBuilder("<Log>");
+				log.append("<RunTime>00:0").append(random.nextInt(10)).append(':')
+					.append(10 + random.nextInt(50)).append("</RunTime>");
+				if (failed[i]) {
+					log.append("<Message>Object not found: Aliases.browser.page").append(i).append("</Message>");
+				}
+				for (int j = 0; j < messages; j++) {
+					log.append("<Message>Step ").append(j).append(" passed</Message>");
+				}
+				if (screenshot) {
+					log.append("<Picture href=\"http://localhost/shot").append(i).append(".png\"/>");
+				}
+				log.append("</Log>");
+				writePart(out, "text/xml", "test" + i + "_TestLog.xml", log.toString());
+
+				if (screenshot) {
+					byte[] image = new byte[imageSize];
+					random.nextBytes(image);
+					writeImage(out, "shot" + i + ".png", image);
+				}
+			}
+			out.write("--" + BOUNDARY + "--\r\n");
+		} finally {
+			out.close();
+		}
+	}
+
+	private String getRoot(boolean[] failed) {
+
+		StringBuilder root = new StringBuilder("<LogData name=\"Scalability\" status=\"2\">");
+		for (int i = 0; i < tests; i++) {
+			if (i % GROUP_SIZE == 0) {
+				root.append("<LogData name=\"Group").append(i / GROUP_SIZE).append("\" status=\"0\">");
+			}
+			String status = failed[i] ? "2" : "0";
+			String href = "test" + i + "_TestLog.xml";
+			root.append("<LogData name=\"Test").append(i).append("\" status=\"").append(status).append("\">")
+				.append("<Provider href=\"").append(href).append("\"/>")
+				.append("<LogData name=\"Log\" status=\"").append(status).append("\">")
+				.append("<Provider href=\"").append(href).append("\"/>")
+				.append("</LogData></LogData>");
+			if (i % GROUP_SIZE == GROUP_SIZE - 1 || i == tests - 1) {
+				root.append("</LogData>");
+			}
+		}
+		return root.append("</LogData>").toString();
+	}
+
+	private static void writePart(Writer out, String type, String name, String content) throws IOException {
+
+		out.write("--" + BOUNDARY + "\r\n");
+		out.write("Content-Type: " + type + ";\r\n");
+		out.write("\tcharset=\"utf-8\"\r\n");
+		out.write("Content-Transfer-Encoding: quoted-printable\r\n");
+		out.write("Content-Location: http://localhost/" + name + "\r\n\r\n");
+
+		//Soft line breaks as written by quoted-printable encoder.
+		//Characters are not escaped: MHTParser does not decode them either
+		for (int i = 0; i < content.length(); i += LINE_LENGTH - 1) {
+			int end = Math.min(i + LINE_LENGTH - 1, content.length());
+			out.write(content.substring(i, end));
+			out.write(end < content.length() ? "=\r\n" : "\r\n");
+		}
+		out.write("\r\n");
+	}
+
+	private static void writeImage(Writer out, String name, byte[] image) throws IOException {
+
+		out.write("--" + BOUNDARY + "\r\n");
+		out.write("Content-Type: image/png\r\n");
+		out.write("Content-Transfer-Encoding: base64\r\n");
+		out.write("Content-Location: http://localhost/" + name + "\r\n\r\n");
+
+		String encoded = DatatypeConverter.printBase64Binary(image);
+		for (int i = 0; i < encoded.length(); i += LINE_LENGTH) {
+			out.write(encoded, i, Math.min(LINE_LENGTH, encoded.length() - i));
+			out.write("\r\n");
+		}
+		out.write("\r\n");
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.jenkinsci.plugins.tcplugin.results.SuiteLayout;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * JUnit xml written from a suite log in every suite layout.
+ *
+ */
+public class ResultParserTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private Document generate(File dir, SuiteLayout layout, List<TestSuiteResult> suites) throws Exception {
+		File report = new File(dir, Constants.JUNIR_REPORT);
+		suites.addAll(ResultParser.generateJUnitXML(new FilePath(dir), new FilePath(report),
+				PublisherMetrics.DISABLED, null, layout));
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(report);
+	}
+
+	@Test
+	public void groupsFlatSuitesIgnoringCase() throws Exception {
+		File dir = tmp.newFolder("log");
+		SuiteLog.write(dir, "Project A", "project_a");
+		List<TestSuiteResult> suites = new ArrayList<TestSuiteResult>();
+		Document doc = generate(dir, SuiteLayout.FLAT, suites);
+
+		assertEquals(1, suites.size());
+		assertEquals("Project_A", suites.get(0).getName());
+		assertEquals(3, suites.get(0).getTestResults().size());
+		NodeList written = doc.getElementsByTagName("testsuite");
+		assertEquals(1, written.getLength());
+		assertEquals("3", ((Element) written.item(0)).getAttribute("tests"));
+	}
+
+	@Test
+	public void escapesNamesInEveryLayout() throws Exception {
+		String name = "Shop & <\"Co\">";
+		for (SuiteLayout layout : SuiteLayout.values()) {
+			File dir = tmp.newFolder(layout.name());
+			SuiteLog.write(dir, name, "Other");
+			Document doc = generate(dir, layout, new ArrayList<TestSuiteResult>());
+
+			Element suite = (Element) doc.getElementsByTagName("testsuite").item(0);
+			String expected = layout == SuiteLayout.NESTED ? name : name.replace(" ", "_");
+			assertEquals(layout.name(), expected, suite.getAttribute("name"));
+			Element test = (Element) doc.getElementsByTagName("testcase").item(0);
+			assertEquals(layout.name(), name.replace(" ", "_"), test.getAttribute("classname"));
+		}
+	}
+}
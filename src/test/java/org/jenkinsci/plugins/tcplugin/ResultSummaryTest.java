@@ -0,0 +1,57 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Per-project figures of a summary.
+ *
+ */
+public class ResultSummaryTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void countsTestsOfEveryProject() throws Exception {
+		ResultSummary summary = SuiteLog.parse(tmp.newFolder("log"));
+		assertEquals(3, summary.getTotal());
+		assertEquals(2, summary.getFailed());
+
+		List<ResultSummary.Part> projects = summary.getProjects();
+		assertEquals(2, projects.size());
+		assertEquals("Project A", projects.get(0).getName());
+		assertEquals(2, projects.get(0).getTotal());
+		assertEquals(1, projects.get(0).getFailed());
+		assertEquals("Project B", projects.get(1).getName());
+		assertEquals(1, projects.get(1).getTotal());
+		assertEquals(1, projects.get(1).getFailed());
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.jenkinsci.plugins.tcplugin.results.SuiteLayout;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Selection of the failed tests to rerun, from a parsed suite log to the command line.
+ *
+ */
+public class RetriesTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final PrintStream logger = new PrintStream(new NullOutputStream());
+
+	@Test
+	public void rerunsFailedTestsOfTheirProjects() throws Exception {
+		ResultSummary summary = SuiteLog.parse(tmp.newFolder("log"));
+		List<String> tests = new ArrayList<String>();
+		List<String[]> runs = TestCompleteBuilder.getRetries(summary.getFailures(), true, tests, logger);
+
+		assertEquals(2, runs.size());
+		assertEquals("Project A", runs.get(0)[0]);
+		assertEquals("Checkout", runs.get(0)[1]);
+		assertEquals("Project B", runs.get(1)[0]);
+		assertEquals("Search", runs.get(1)[1]);
+		assertEquals(2, tests.size());
+
+		List<String> args = TestExecuteCommand.getArguments("TestExecute.exe", "Suite.pjs",
+				runs.get(0)[0], runs.get(0)[1], "/exit", new EnvVars()).toList();
+		assertTrue(args.toString(), args.contains("/project:Project A"));
+		assertTrue(args.toString(), args.contains("/test:Checkout"));
+	}
+
+	@Test
+	public void rerunsTestsWithoutProjectOfASingleProject() throws Exception {
+		ResultSummary summary = SuiteLog.parse(tmp.newFolder("log"));
+		List<String[]> runs = TestCompleteBuilder.getRetries(summary.getFailures(), false, new ArrayList<String>(), logger);
+
+		assertEquals(2, runs.size());
+		assertEquals("", runs.get(0)[0]);
+		List<String> args = TestExecuteCommand.getArguments("TestExecute.exe", "Project.mds",
+				runs.get(0)[0], runs.get(0)[1], null, new EnvVars()).toList();
+		for (String arg : args) {
+			assertTrue(args.toString(), !arg.startsWith("/project:"));
+		}
+	}
+
+	@Test
+	public void mergesRetriesOverThePreviousBuild() throws Exception {
+		File previous = tmp.newFolder("previous");
+		File log = tmp.newFolder("log");
+		SuiteLog.write(log);
+		ResultExport.publish(previous, ResultParser.generateJUnitXML(new FilePath(log),
+				new FilePath(new File(log, Constants.JUNIR_REPORT)), PublisherMetrics.DISABLED));
+
+		//Project A is rerun, Project C is new
+		File rerun = tmp.newFolder("rerun");
+		SuiteLog.write(rerun, "Project A", "Project C");
+		File report = new File(rerun, Constants.JUNIR_REPORT);
+		List<TestSuiteResult> suites = ResultParser.generateJUnitXML(new FilePath(rerun), new FilePath(report),
+				PublisherMetrics.DISABLED, "Retry", SuiteLayout.FLAT, ResultExport.read(previous));
+
+		ResultSummary summary = ResultSummary.of(suites);
+		assertEquals(4, summary.getTotal());
+		assertEquals(3, summary.getFailed());
+		assertEquals(3, suites.size());
+		assertEquals("Project_A", suites.get(0).getName());
+		assertEquals(2, suites.get(0).getTestResults().size());
+		assertEquals("Project_B", suites.get(1).getName());
+		assertEquals("Project_C", suites.get(2).getName());
+		String xml = FileUtils.readFileToString(report, "UTF-8");
+		assertEquals(3, xml.split("<system-out>", -1).length - 1);
+
+		List<String> tests = new ArrayList<String>();
+		tests.add("Project_A / Checkout");
+		RerunAction action = new RerunAction(null, 1, tests);
+		action.count(suites);
+		assertEquals(Integer.valueOf(0), action.getPassed());
+		assertEquals(Integer.valueOf(1), action.getFailed());
+	}
+
+	@Test
+	public void runsAllTestsIfProjectIsNotKnown() {
+		List<ResultSummary.Test> failures = new ArrayList<ResultSummary.Test>();
+		failures.add(new ResultSummary.Test("", "Orphan", 1, "Failed", new ArrayList<String>()));
+		assertNull(TestCompleteBuilder.getRetries(failures, true, new ArrayList<String>(), logger));
+	}
+}
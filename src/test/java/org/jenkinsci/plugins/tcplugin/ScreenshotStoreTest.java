@@ -0,0 +1,151 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Reference counting of stored screenshots.
+ *
+ */
+public class ScreenshotStoreTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final int cacheSize = ScreenshotStore.CACHE_SIZE;
+
+	@After
+	public void restoreCache() {
+		ScreenshotStore.CACHE_SIZE = cacheSize;
+	}
+
+	private static void image(File dir, String name, int content) throws IOException {
+		FileOutputStream out = new FileOutputStream(new File(dir, name));
+		try {
+			out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', (byte) content });
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void storesIdenticalImagesOnce() throws Exception {
+		File dir = tmp.newFolder("report");
+		image(dir, "a.png", 1);
+		image(dir, "b.png", 1);
+		image(dir, "c.png", 2);
+		image(dir, "log.xml", 1);
+
+		ScreenshotStore store = new ScreenshotStore(tmp.newFolder("store"));
+		Map<String, String> stored = store.add(new FilePath(dir), true);
+
+		assertEquals(Arrays.asList("a.png", "b.png", "c.png"), new ArrayList<String>(stored.keySet()));
+		assertEquals(stored.get("a.png"), stored.get("b.png"));
+		assertEquals(2, store.getCount(stored.get("a.png")));
+		assertTrue(store.getBlob(stored.get("c.png")).exists());
+		//Images are moved, other files stay
+		assertEquals(Arrays.asList("log.xml"), Arrays.asList(dir.list()));
+
+		store.release(stored.values());
+		assertFalse(store.getBlob(stored.get("a.png")).exists());
+		assertEquals(0, store.getCount(stored.get("c.png")));
+	}
+
+	@Test
+	public void keepsCountsAcrossJournalMerges() throws Exception {
+		File root = tmp.newFolder("store");
+		ScreenshotStore store = new ScreenshotStore(root);
+		String a = hash('a');
+		String b = hash('b');
+
+		List<String> many = Collections.nCopies(1500, a);
+		store.retain(many);
+		store.retain(Arrays.asList(b));
+		store.release(Collections.nCopies(700, a));
+
+		//Dropped from the cache by another project, loaded again from the counts file and the journal
+		ScreenshotStore.CACHE_SIZE = 1;
+		assertEquals(0, new ScreenshotStore(tmp.newFolder("other")).getCount(a));
+		store = new ScreenshotStore(root);
+		assertEquals(800, store.getCount(a));
+		assertEquals(1, store.getCount(b));
+
+		int journals = 0;
+		for (String name : root.list()) {
+			if (name.endsWith(".journal")) {
+				journals++;
+			}
+		}
+		assertEquals(1, journals);
+	}
+
+	@Test
+	public void keepsCountsWhenSaveIsInterrupted() throws Exception {
+		File root = tmp.newFolder("store");
+		ScreenshotStore store = new ScreenshotStore(root);
+		String a = hash('a');
+		store.retain(Collections.nCopies(1500, a));
+
+		//Crash after the old counts were moved aside, before the new ones were renamed in place
+		File refs = new File(root, "refs.properties");
+		assertTrue(refs.renameTo(new File(root, "refs.properties.old")));
+
+		ScreenshotStore.CACHE_SIZE = 1;
+		assertEquals(0, new ScreenshotStore(tmp.newFolder("other")).getCount(a));
+		store = new ScreenshotStore(root);
+		assertEquals(1500, store.getCount(a));
+
+		//Next save puts the counts back in place
+		store.retain(Collections.nCopies(1500, a));
+		assertTrue(refs.isFile());
+		assertFalse(new File(root, "refs.properties.old").exists());
+		ScreenshotStore.CACHE_SIZE = 1;
+		assertEquals(0, new ScreenshotStore(tmp.newFolder("third")).getCount(a));
+		assertEquals(3000, new ScreenshotStore(root).getCount(a));
+	}
+
+	private static String hash(char c) {
+		char[] chars = new char[64];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.jenkinsci.plugins.tcplugin.results.TestResult;
+import org.jenkinsci.plugins.tcplugin.results.TestSuiteResult;
+
+/**
+ * Small suite log of two projects with failed tests, for tests.
+ * <i>Project A</i> has tests <i>Login</i> (passed) and <i>Checkout</i> (failed),
+ * <i>Project B</i> has test <i>Search</i> (failed) in a folder.
+ *
+ */
+final class SuiteLog {
+
+	private SuiteLog() {
+	}
+
+	/**
+	 * Suite log: the suite, its projects, then folders and tests.
+	 * Same layout as the benchmark log fixture.
+	 *
+	 * @param dir Directory to write to.
+	 */
+	static void write(File dir) throws IOException {
+		write(dir, "Project A", "Project B");
+	}
+
+	/**
+	 * Suite log with the given project names.
+	 *
+	 * @param dir Directory to write to.
+	 * @param projectA Name of the first project.
+	 * @param projectB Name of the second project.
+	 */
+	static void write(File dir, String projectA, String projectB) throws IOException {
+		StringBuilder root = new StringBuilder();
+		root.append("<LogData name=\"Suite\" status=\"2\">\n");
+		root.append("<LogData name=\"").append(TestResult.escapeXml(projectA)).append("\" status=\"2\">\n");
+		test(dir, root, "Login", false);
+		test(dir, root, "Checkout", true);
+		root.append("</LogData>\n");
+		root.append("<LogData name=\"").append(TestResult.escapeXml(projectB)).append("\" status=\"2\">\n");
+		root.append("<LogData name=\"Folder\" status=\"2\">\n");
+		test(dir, root, "Search", true);
+		root.append("</LogData>\n");
+		root.append("</LogData>\n");
+		root.append("</LogData>\n");
+		write(new File(dir, Constants.ROOT_XML), root.toString());
+	}
+
+	private static void test(File dir, StringBuilder root, String name, boolean failed) throws IOException {
+		String log = name + "_TestLog.xml";
+		String status = failed ? "2" : "0";
+		root.append("<LogData name=\"").append(name).append("\" status=\"").append(status).append("\">\n");
+		root.append("<Provider name=\"").append(name).append("\" href=\"").append(log).append("\"/>\n");
+		root.append("<LogData name=\"").append(name).append(" log\" status=\"").append(status).append("\">\n");
+		root.append("<Provider name=\"Log\" href=\"").append(log).append("\"/>\n");
+		root.append("</LogData>\n");
+		root.append("</LogData>\n");
+		write(new File(dir, log), "<Log>\n<RunTime>00:00:05</RunTime>\n"
+				+ (failed ? "<Message>Object not found</Message>\n" : "") + "</Log>\n");
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write the log and parse it.
+	 *
+	 * @param dir Directory to write to.
+	 * @return Summary of the parsed tests.
+	 */
+	static ResultSummary parse(File dir) throws IOException, InterruptedException {
+		write(dir);
+		List<TestSuiteResult> suites = ResultParser.generateJUnitXML(new FilePath(dir),
+				new FilePath(new File(dir, Constants.JUNIR_REPORT)), PublisherMetrics.DISABLED);
+		return ResultSummary.of(suites);
+	}
+}
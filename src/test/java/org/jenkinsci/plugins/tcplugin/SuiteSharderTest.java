@@ -0,0 +1,113 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.AbortException;
+import hudson.EnvVars;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Projects of a project suite and their split into shards.
+ *
+ */
+public class SuiteSharderTest {
+
+	private static final String SUITE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<Root>\n"
+			+ "  <node name=\"child list\">\n"
+			+ "    <node name=\"item 0\"><prp name=\"filename\" type=\"S\" value=\"Orders\\Orders.mds\"/></node>\n"
+			+ "    <node name=\"item 1\"><prp name=\"filename\" type=\"S\" value=\"checkout/Checkout.MDS\"/></node>\n"
+			+ "    <node name=\"item 2\"><prp name=\"filename\" type=\"S\" value=\"Login\\Login.mds\"/></node>\n"
+			+ "    <node name=\"item 3\"><prp name=\"filename\" type=\"S\" value=\"Orders\\Orders.mds\"/></node>\n"
+			+ "    <node name=\"item 4\"><prp name=\"description\" type=\"S\" value=\"Not a project\"/></node>\n"
+			+ "  </node>\n"
+			+ "</Root>\n";
+
+	@Test
+	public void readsProjectsOfTheSuite() throws Exception {
+		assertEquals(Arrays.asList("Orders\\Orders.mds", "checkout/Checkout.MDS", "Login\\Login.mds"),
+				SuiteSharder.getProjectPaths(new ByteArrayInputStream(SUITE.getBytes("UTF-8"))));
+		assertEquals(Arrays.asList("Checkout", "Login", "Orders"),
+				SuiteSharder.getProjects(new ByteArrayInputStream(SUITE.getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void dealsProjectsRoundRobin() {
+		List<String> projects = Arrays.asList("A", "B", "C", "D", "E");
+
+		assertEquals(Arrays.asList("A", "C", "E"), SuiteSharder.getShard(projects, 0, 2));
+		assertEquals(Arrays.asList("B", "D"), SuiteSharder.getShard(projects, 1, 2));
+
+		//Every project belongs to exactly one shard, sizes differ by one at most
+		List<String> all = new ArrayList<String>();
+		for (int i = 0; i < 3; i++) {
+			List<String> shard = SuiteSharder.getShard(projects, i, 3);
+			assertTrue(shard.toString(), shard.size() == 1 || shard.size() == 2);
+			all.addAll(shard);
+		}
+		assertEquals(projects.size(), all.size());
+		assertTrue(all.containsAll(projects));
+	}
+
+	@Test
+	public void runsEverythingWithoutShards() {
+		List<String> projects = Arrays.asList("A", "B");
+		assertEquals(projects, SuiteSharder.getShard(projects, 0, 1));
+		assertEquals(projects, SuiteSharder.getShard(projects, 0, 0));
+	}
+
+	@Test
+	public void leavesExtraShardsEmpty() {
+		assertEquals(0, SuiteSharder.getShard(Arrays.asList("A", "B"), 3, 4).size());
+	}
+
+	@Test
+	public void readsShardIndex() throws Exception {
+		EnvVars env = new EnvVars();
+		env.put(SuiteSharder.SHARD_VARIABLE, " 2 ");
+		assertEquals(2, SuiteSharder.getShardIndex(env, 3));
+
+		for (String value : new String[] { null, "3", "-1", "x" }) {
+			env = new EnvVars();
+			if (value != null) {
+				env.put(SuiteSharder.SHARD_VARIABLE, value);
+			}
+			try {
+				SuiteSharder.getShardIndex(env, 3);
+				fail("Accepted " + value);
+			} catch (AbortException e) {
+				//expected
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import hudson.EnvVars;
+import hudson.model.Result;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Command line of TestExecute and mapping of its exit codes.
+ *
+ */
+public class TestExecuteCommandTest {
+
+	@Test
+	public void runsWholeSuite() {
+		assertEquals(Arrays.asList("TestExecute.exe", "Suite.pjs", "/run"),
+				TestExecuteCommand.getArguments("TestExecute.exe", "Suite.pjs", "", "", null, new EnvVars()).toList());
+	}
+
+	@Test
+	public void runsProjectOfTheShard() {
+		assertEquals(Arrays.asList("TestExecute.exe", "Suite.pjs", "/run", "/project:Orders"),
+				TestExecuteCommand.getArguments("TestExecute.exe", "Suite.pjs", "Orders", "", null, new EnvVars()).toList());
+	}
+
+	@Test
+	public void rerunsSingleTest() {
+		assertEquals(Arrays.asList("TestExecute.exe", "Suite.pjs", "/run", "/project:Orders", "/test:New order"),
+				TestExecuteCommand.getArguments("TestExecute.exe", "Suite.pjs", "Orders", "New order", null,
+						new EnvVars()).toList());
+	}
+
+	@Test
+	public void expandsVariablesOfAdditionalParameters() {
+		EnvVars env = new EnvVars();
+		env.put(TestExecuteCommand.PROJECT_VARIABLE, "Orders");
+		env.put("WORKSPACE", "C:\\ws");
+		assertEquals(Arrays.asList("TestExecute.exe", "Suite.pjs", "/run", "/project:Orders",
+						"/ExportLog:C:\\ws\\Orders.mht", "/exit", "%UNKNOWN%"),
+				TestExecuteCommand.getArguments("TestExecute.exe", "Suite.pjs", "Orders", "",
+						"/ExportLog:${WORKSPACE}\\%TC_PROJECT%.mht /exit %UNKNOWN%", env).toList());
+	}
+
+	@Test
+	public void mapsExitCodesToResults() {
+		assertSame(Result.SUCCESS, TestExecuteCommand.getResult(0));
+		assertSame(Result.UNSTABLE, TestExecuteCommand.getResult(1));
+		assertSame(Result.FAILURE, TestExecuteCommand.getResult(2));
+		assertSame(Result.FAILURE, TestExecuteCommand.getResult(3));
+		assertSame(Result.FAILURE, TestExecuteCommand.getResult(1000));
+		assertSame(Result.FAILURE, TestExecuteCommand.getResult(-1));
+		assertSame(Result.FAILURE, TestExecuteCommand.getResult(TestExecuteCommand.KILLED));
+	}
+
+	@Test
+	public void describesExitCodes() {
+		assertEquals("No errors", TestExecuteCommand.getMessage(0));
+		assertEquals("There are warnings", TestExecuteCommand.getMessage(1));
+		assertEquals("There are errors", TestExecuteCommand.getMessage(2));
+		assertEquals("Killed after inactivity timeout", TestExecuteCommand.getMessage(TestExecuteCommand.KILLED));
+		assertEquals("Unknown exit code 42", TestExecuteCommand.getMessage(42));
+	}
+}
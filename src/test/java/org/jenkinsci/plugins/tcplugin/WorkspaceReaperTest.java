@@ -0,0 +1,75 @@
+/**
+ * The MIT License
+ * Copyright (c) 2015 Sergey Myasnikov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.tcplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Throttled background deletion of outdated publisher output.
+ *
+ */
+public class WorkspaceReaperTest {
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static void write(File file, int size) throws IOException {
+		file.getParentFile().mkdirs();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[size]);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void pausesAfterEveryBatchOfFiles() throws Exception {
+		File dir = tmp.newFolder("1-trash");
+		for (int i = 0; i < 24; i++) {
+			write(new File(dir, "sub" + (i % 2) + "/" + i + ".xml"), 1);
+		}
+		//24 files, 2 subfolders and the folder itself
+		assertEquals(2, WorkspaceReaper.delete(dir, 10, Long.MAX_VALUE, 0));
+		assertFalse(dir.exists());
+	}
+
+	@Test
+	public void pausesAfterEveryBatchOfBytes() throws Exception {
+		File dir = tmp.newFolder("2-trash");
+		for (int i = 0; i < 3; i++) {
+			write(new File(dir, i + ".png"), 100);
+		}
+		assertEquals(1, WorkspaceReaper.delete(dir, Integer.MAX_VALUE, 150, 0));
+		assertFalse(dir.exists());
+	}
+}